@@ -0,0 +1,104 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import flow.modules.*;
+
+/**
+   Checks that no module allocates memory on the control path once it has settled.  Each module in
+   Modules in turn is built into a Sound, with all of its inputs fed by a KHarmonics and all of its
+   modulations by a free LFO (which also drives the KHarmonics), so that everything changes every block.
+   We then run the Sound for a while to let it settle, and measure how much the Sound's go() allocates
+   per block over a while longer.  Modules which allocate are listed, along with how much.  A few stray
+   bytes over the whole run, such as the JIT compiler can cause, don't count: a module which allocates
+   on the control path allocates at least one object, sixteen bytes or so, every block.  Modules which
+   can't run without an audio device, such as AudioIn, are skipped.
+
+   <p>This uses an Output which isn't connected to an audio device, and drives the Sound by hand rather
+   than from the primary voice thread.  Run it as java flow.AllocationCheck [blocks].
+*/
+
+public class AllocationCheck
+    {
+    // Builds the given module into SOUND, replacing whatever was there, and returns it
+    static Modulation build(Sound sound, Class c) throws Exception
+        {
+        while(sound.getNumRegistered() > 0)
+            sound.removeRegistered(0);
+
+        LFO lfo = new LFO(sound);
+        lfo.setFree(true);
+        KHarmonics harmonics = new KHarmonics(sound);
+        harmonics.setModulation(lfo, 0);
+        Modulation mod = (Modulation)(c.getConstructor(Sound.class).newInstance(sound));
+        if (mod instanceof Unit)
+            {
+            Unit unit = (Unit)mod;
+            for(int i = 0; i < unit.getNumInputs(); i++)
+                unit.setInput(harmonics, i);
+            sound.setEmits(unit);
+            }
+        else sound.setEmits(harmonics);
+        for(int i = 0; i < mod.getNumModulations(); i++)
+            if (mod.getModulation(i) instanceof Constant)
+                mod.setModulation(lfo, i);
+        return mod;
+        }
+
+    // Runs SOUND for BLOCKS blocks, advancing the tick as the Output Thread would
+    static void run(Output output, Sound sound, int blocks)
+        {
+        for(int i = 0; i < blocks; i++)
+            {
+            output.syncTick += Output.skip;
+            sound.hurry();
+            sound.go();
+            }
+        }
+
+    public static void main(String[] args)
+        {
+        int blocks = (args.length > 0 ? Integer.parseInt(args[0]) : 5000);
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)(java.lang.management.ManagementFactory.getThreadMXBean());
+        long id = Thread.currentThread().getId();
+        Output output = new Output(false);
+        Sound sound = new Sound(output);
+        sound.setNote(440);
+
+        Class[] modules = Modules.getModules();
+        int checked = 0;
+        int allocating = 0;
+        for(int i = 0; i < modules.length; i++)
+            {
+            String name = modules[i].getSimpleName();
+            try
+                {
+                build(sound, modules[i]);
+                sound.reset();
+                sound.gate();
+
+                // warm up
+                run(output, sound, blocks);
+
+                long before = bean.getThreadAllocatedBytes(id);
+                run(output, sound, blocks);
+                long after = bean.getThreadAllocatedBytes(id);
+                checked++;
+                if (after - before >= blocks)
+                    {
+                    allocating++;
+                    System.err.println(name + ": " + ((after - before) / (double)blocks) + " bytes per block");
+                    }
+                }
+            catch (Throwable ex)
+                {
+                System.err.println(name + ": skipped, " + ex);
+                }
+            }
+        System.err.println("Modules: " + checked + " Blocks: " + blocks + " Allocating: " + allocating);
+        System.exit(allocating == 0 ? 0 : 1);
+        }
+    }
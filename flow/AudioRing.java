@@ -0,0 +1,99 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.locks.*;
+
+/**
+   A lock-free ring buffer of PCM bytes between one producer thread, which synthesizes
+   audio, and one consumer thread, which writes it to the audio device.  Output uses it so
+   that a hiccup in synthesis (or a garbage collection) eats into the audio already waiting in
+   the ring rather than immediately starving the device.
+
+   <p>The producer calls write(...), which waits until the ring holds no more than a given
+   target number of bytes before adding more: the target, rather than the ring's capacity,
+   sets how far ahead of the device the producer runs.  The consumer calls read(...), which
+   takes whatever is there, waiting up to a given time if the ring is empty.  Both sides park
+   while waiting, and each wakes the other when it has made room or added data.
+*/
+
+public class AudioRing
+    {
+    final byte[] buffer;
+    final int mask;
+
+    // Total bytes written and read so far.  Each is written by only one thread.
+    volatile long written = 0;
+    volatile long read = 0;
+
+    volatile Thread producer;
+    volatile Thread consumer;
+
+    /** Builds a ring able to hold at least CAPACITY bytes. */
+    public AudioRing(int capacity)
+        {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        buffer = new byte[size];
+        mask = size - 1;
+        }
+
+    /** Returns the number of bytes the ring can hold. */
+    public int getCapacity() { return buffer.length; }
+
+    /** Returns the number of bytes presently in the ring. */
+    public int size() { return (int)(written - read); }
+
+    /** Adds the first LEN bytes of DATA to the ring, first waiting until the ring holds no
+        more than TARGET bytes (or, if LEN is large, until there's room for it at all).  Called by the producer. */
+    public void write(byte[] data, int len, int target)
+        {
+        int limit = Math.min(Math.max(target, 0), buffer.length - len);
+        if (size() > limit)
+            {
+            producer = Thread.currentThread();
+            while(size() > limit)
+                LockSupport.park(this);
+            }
+
+        long w = written;
+        int start = (int)(w & mask);
+        int first = Math.min(len, buffer.length - start);
+        System.arraycopy(data, 0, buffer, start, first);
+        System.arraycopy(data, first, buffer, 0, len - first);
+        written = w + len;
+
+        Thread c = consumer;
+        if (c != null) LockSupport.unpark(c);
+        }
+
+    /** Removes up to MAX bytes from the ring into DATA, and returns how many.  If the
+        ring is empty, first waits up to NANOS nanoseconds for something to arrive.  Called by the consumer. */
+    public int read(byte[] data, int max, long nanos)
+        {
+        if (size() == 0)
+            {
+            consumer = Thread.currentThread();
+            long deadline = System.nanoTime() + nanos;
+            while(size() == 0)
+                {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return 0;
+                LockSupport.parkNanos(this, remaining);
+                }
+            }
+
+        long r = read;
+        int len = Math.min(max, (int)(written - r));
+        int start = (int)(r & mask);
+        int first = Math.min(len, buffer.length - start);
+        System.arraycopy(buffer, start, data, 0, first);
+        System.arraycopy(buffer, 0, data, first, len - first);
+        read = r + len;
+
+        Thread p = producer;
+        if (p != null) LockSupport.unpark(p);
+        return len;
+        }
+    }
@@ -0,0 +1,221 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+   A reusable barrier between one coordinating thread and a fixed set of worker threads,
+   used by Output to hand each control block to the per-voice threads and each render block
+   to the per-output threads.
+
+   <p>The coordinator calls release() to start a round, and then awaitArrivals() to wait until
+   every worker has called arrive().  Each worker loops on awaitRelease(...), does its work,
+   and calls arrive().  A round is identified by a single generation counter: a worker remembers
+   the last generation it saw, and waits for it to change.
+
+   <p>Rounds are short (a block is 32 samples, well under a millisecond) and there are over a
+   thousand of them a second, so rather than going through a monitor and wait()/notify() on every
+   handoff, a waiting thread first spins briefly, and only then parks itself with LockSupport.park().
+   The releasing thread unparks only those threads which actually went to sleep.  On a single-CPU
+   machine spinning can only delay the thread we're waiting on, so there we park right away.
+*/
+
+public class Barrier
+    {
+    /** How many times a waiting thread spins before it parks. */
+    public static final int SPINS = (Runtime.getRuntime().availableProcessors() > 1 ? 2000 : 0);
+
+    volatile int generation;
+    final AtomicInteger pending = new AtomicInteger();
+    final Thread[] workers;
+    final AtomicIntegerArray parked;                // is worker i (possibly) parked?
+    volatile Thread coordinator;
+    volatile boolean coordinatorParked;
+    int numWorkers;
+
+    /** Builds a Barrier for up to PARTIES worker threads. */
+    public Barrier(int parties)
+        {
+        workers = new Thread[parties];
+        parked = new AtomicIntegerArray(parties);
+        }
+
+    /** Registers THREAD as the next worker, and returns its index.  This must be
+        called by the coordinator, before the thread is started. */
+    public int add(Thread thread)
+        {
+        workers[numWorkers] = thread;
+        return numWorkers++;
+        }
+
+    /** Returns the current generation. */
+    public int getGeneration() { return generation; }
+
+    /** Starts a new round: releases every worker. */
+    public void release()
+        {
+        coordinator = Thread.currentThread();
+        pending.set(numWorkers);
+        generation++;                               // only the coordinator writes this
+        for(int i = 0; i < numWorkers; i++)
+            {
+            if (parked.get(i) != 0)
+                LockSupport.unpark(workers[i]);
+            }
+        }
+
+    /** Waits until every worker has arrived in the current round. */
+    public void awaitArrivals()
+        {
+        for(int i = 0; i < SPINS; i++)
+            {
+            if (pending.get() == 0) return;
+            Thread.onSpinWait();
+            }
+        coordinatorParked = true;
+        while(pending.get() != 0)
+            LockSupport.park(this);
+        coordinatorParked = false;
+        }
+
+    /** Called by worker INDEX to wait for the generation after SEEN.  Returns the new generation. */
+    public int awaitRelease(int index, int seen)
+        {
+        int gen;
+        for(int i = 0; i < SPINS; i++)
+            {
+            if ((gen = generation) != seen) return gen;
+            Thread.onSpinWait();
+            }
+        parked.set(index, 1);
+        while((gen = generation) == seen)
+            LockSupport.park(this);
+        parked.set(index, 0);
+        return gen;
+        }
+
+    /** Called by a worker when it has finished its part of the current round. */
+    public void arrive()
+        {
+        if (pending.decrementAndGet() == 0 && coordinatorParked)
+            LockSupport.unpark(coordinator);
+        }
+
+
+
+    //// MICROBENCHMARK
+    ////
+    //// Compares the round trip (release all workers, wait for all of them) of this Barrier
+    //// against the per-thread synchronized / wait() / notify() semaphores which Output used before.
+    //// Usage: java flow.Barrier [workers] [rounds]
+
+    static Object[] locks;
+    static boolean[] semaphores;
+
+    static void blockUntil(int i, boolean val)
+        {
+        synchronized(locks[i])
+            {
+            while(semaphores[i] != val)
+                {
+                try { locks[i].wait(); } catch (Exception e) { }
+                }
+            }
+        }
+
+    static void signal(int i, boolean val)
+        {
+        synchronized(locks[i])
+            {
+            semaphores[i] = val;
+            locks[i].notify();
+            }
+        }
+
+    static long monitorRounds(int numWorkers, int rounds)
+        {
+        locks = new Object[numWorkers];
+        semaphores = new boolean[numWorkers];
+        for(int i = 0; i < numWorkers; i++)
+            locks[i] = new Object[0];
+        for(int i = 0; i < numWorkers; i++)
+            {
+            final int _i = i;
+            Thread thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    while(true)
+                        {
+                        blockUntil(_i, true);
+                        signal(_i, false);
+                        }
+                    }
+                });
+            thread.setDaemon(true);
+            thread.start();
+            }
+
+        long time = System.nanoTime();
+        for(int r = 0; r < rounds; r++)
+            {
+            for(int i = 0; i < numWorkers; i++)
+                signal(i, true);
+            for(int i = 0; i < numWorkers; i++)
+                blockUntil(i, false);
+            }
+        return System.nanoTime() - time;
+        }
+
+    static long barrierRounds(int numWorkers, int rounds)
+        {
+        final Barrier barrier = new Barrier(numWorkers);
+        for(int i = 0; i < numWorkers; i++)
+            {
+            final int _i = i;
+            Thread thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    int gen = 0;
+                    while(true)
+                        {
+                        gen = barrier.awaitRelease(_i, gen);
+                        barrier.arrive();
+                        }
+                    }
+                });
+            thread.setDaemon(true);
+            barrier.add(thread);
+            thread.start();
+            }
+
+        long time = System.nanoTime();
+        for(int r = 0; r < rounds; r++)
+            {
+            barrier.release();
+            barrier.awaitArrivals();
+            }
+        return System.nanoTime() - time;
+        }
+
+    public static void main(String[] args)
+        {
+        int numWorkers = (args.length > 0 ? Integer.parseInt(args[0]) : 4);
+        int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+
+        // warm up
+        monitorRounds(numWorkers, rounds / 10);
+        barrierRounds(numWorkers, rounds / 10);
+
+        long monitor = monitorRounds(numWorkers, rounds);
+        long barrier = barrierRounds(numWorkers, rounds);
+        System.err.println("Workers: " + numWorkers + " Rounds: " + rounds + " Spins: " + SPINS);
+        System.err.println("wait/notify: " + (monitor / rounds) + " ns per round");
+        System.err.println("Barrier:     " + (barrier / rounds) + " ns per round");
+        }
+    }
@@ -0,0 +1,168 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer which builds a voice's block of samples one partial at a time (partial-major
+   order) rather than one sample at a time.
+
+   <p>buildSample(...) is called once per sample, and every call re-reads the amplitude,
+   frequency, order, position, and current amplitude of every partial, and writes back
+   the latter two.  BlockRenderer instead reads each partial's state once, holds it in
+   locals while it generates all of the block's samples for that partial, adding them
+   into a per-voice accumulator, and then writes it back once.  The arrays are thus
+   streamed once per block rather than once per sample.  
+   
+   <p>Within a partial, stepping amplitude and position sample by sample would make every
+   sample wait on the previous one.  So instead we compute them in closed form: the amplitude
+   interpolation a' = a (1 - alpha) + target alpha is, n samples on, 
+   target + (a - target) (1 - alpha)^n, with the powers precomputed once; and the position 
+   is simply the starting position plus n increments.  We also notice partials which are
+   inaudible, below MINIMUM_VOLUME, for the whole block and skip them.
+
+   <p>The result is the same as buildSample(...) up to floating-point rounding (which now and
+   then tips a sine lookup into the neighboring slot of Utility.sinTable).  The dephase
+   case is the exception to the closed-form position, because there a partial only moves 
+   while it's audible.
+*/
+
+public class BlockRenderer extends Renderer
+    {
+    // Per-voice accumulators.  Each voice is only rendered by one output thread at a time.
+    double[][] accumulators;
+    
+    // decay[n] is (1 - PARTIALS_INTERPOLATION_ALPHA)^(n + 1)
+    double[] decay;
+
+    public BlockRenderer(Output output, int numVoices, int skip)
+        {
+        super(output);
+        accumulators = new double[numVoices][skip];
+        buildDecay(skip);
+        }
+
+    void buildDecay(int len)
+        {
+        decay = new double[len];
+        double d = 1.0;
+        for(int n = 0; n < len; n++)
+            {
+            d *= Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+            decay[n] = d;
+            }
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double pitch = with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        int len = samples.length;
+
+        double[] acc = accumulators[s];
+        if (acc.length != len)
+            acc = accumulators[s] = new double[len];
+        double[] decay = this.decay;
+        if (decay.length != len)
+            {
+            buildDecay(len);
+            decay = this.decay;
+            }
+        for(int samp = 0; samp < len; samp++)
+            acc[samp] = 0;
+
+        final double well = Output.WELL_ABOVE_SUBNORMALS;
+        int cutoff = with.cutoffs[s];
+        final double minimum = Output.MINIMUM_VOLUME;
+
+        if (with.dephase[s])
+            {
+            for (int i = 0; i < cutoff; i++)                    // see buildSample() for why we stop at Nyquist
+                {
+                double frequency = freq[i];
+                int oi = orders[i] & 0xFF;
+                double target = amp[i];
+                double amplitude = currentAmp[oi];
+                if (amplitude <= minimum && target <= minimum)
+                    {
+                    // Inaudible all block long, since the amplitude only moves from one toward the other.
+                    // Dephased partials don't move when inaudible, so only the amplitude needs updating.
+                    amplitude = target + (amplitude - target) * decay[len - 1];
+                    if (amplitude < well) amplitude = 0;
+                    currentAmp[oi] = amplitude;
+                    continue;
+                    }
+
+                double position = pos[oi];
+                double inc = frequency * tr;
+                double mix = Output.MIXING[oi];
+                double delta = amplitude - target;
+                for (int samp = 0; samp < len; samp++)
+                    {
+                    amplitude = target + delta * decay[samp];
+                    if (amplitude < well) amplitude = 0;
+                    if (amplitude > minimum)
+                        {
+                        position = position + inc;
+                        position = position - (int) position;
+                        acc[samp] += Utility.fastSin(position * Output.PI2 + mix) * amplitude;
+                        }
+                    }
+                currentAmp[oi] = amplitude;
+                pos[oi] = position;
+                }
+            }
+        else
+            {
+            for (int i = 0; i < pos.length; i++)
+                {
+                double frequency = freq[i];
+                int oi = orders[i] & 0xFF;
+                double target = amp[i];
+                double amplitude = currentAmp[oi];
+                double position = pos[oi];
+                double inc = frequency * tr;
+
+                if ((amplitude <= minimum && target <= minimum) || i >= cutoff)
+                    {
+                    // Inaudible all block long, since the amplitude only moves from one toward the other.  We still have to keep the amplitude and position
+                    // up to date, but we can skip the sines and jump straight to the end of the block.
+                    amplitude = target + (amplitude - target) * decay[len - 1];
+                    if (amplitude < well) amplitude = 0;
+                    position = position + inc * len;
+                    position = position - (int) position;
+                    }
+                else
+                    {
+                    double start = position;
+                    double delta = amplitude - target;
+                    for (int samp = 0; samp < len; samp++)
+                        {
+                        double a = target + delta * decay[samp];
+                        double p = start + inc * (samp + 1);
+                        p = p - (int) p;
+                        if (a > minimum)
+                            acc[samp] += Utility.fastSin(p * Output.PI2) * a;
+                        }
+                    amplitude = target + delta * decay[len - 1];
+                    if (amplitude < well) amplitude = 0;
+                    position = start + inc * len;
+                    position = position - (int) position;
+                    }
+                currentAmp[oi] = amplitude;
+                pos[oi] = position;
+                }
+            }
+
+        double scale = with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        for(int samp = 0; samp < len; samp++)
+            samples[samp] = acc[samp] * scale;
+        }
+    }
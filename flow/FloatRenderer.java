@@ -0,0 +1,159 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer which does all of its per-sample work in single precision.
+
+   <p>Our final output is 16-bit PCM, so the double-precision amplitudes, phases, and sine
+   table used by buildSample() are far more precise than anything we can hear, and cost twice the
+   memory bandwidth and cache footprint.  FloatRenderer gathers each voice's state into float arrays,
+   indexed by partial, once per block (as LaneRenderer does), runs the block out of those, and
+   scatters the state back into Output.positions and the current amplitudes at the end.  The sine
+   table is a float copy of Utility.sinTable, at half the size.
+
+   <p>Float phases are kept in 0...1 and are re-wrapped every sample, so they never lose more than
+   about 6e-8 of a cycle, far finer than the 1/65536 of a cycle resolution of the table.  Amplitudes are
+   undenormalized once per block against a float threshold rather than WELL_ABOVE_SUBNORMALS.
+   Rounding each partial's per-sample increment to a float puts it off by up to about 6e-8 of its
+   frequency, so over time the phases drift away from those of buildSample(), but that is 
+   a ten-thousandth of a cent.
+
+   <p>The Swap itself stays in double: it's read once per block here, whereas all the bandwidth is
+   spent in the per-sample loops.
+*/
+
+public class FloatRenderer extends Renderer
+    {
+    static final int TABLE_LENGTH = Utility.SIN_TABLE_LENGTH;
+    static final int TABLE_MASK = TABLE_LENGTH - 1;
+    static final float[] sinTable = new float[TABLE_LENGTH];
+    static
+        {
+        for(int i = 0; i < TABLE_LENGTH; i++)
+            sinTable[i] = (float) Utility.sinTable[i];
+        }
+
+    // Float subnormals start at about 1.2e-38.  An amplitude above this can't decay into them within a block.
+    static final float WELL_ABOVE_FLOAT_SUBNORMALS = 1.0e-30f;
+
+    // Per-voice scratch state, indexed by partial rather than by order.
+    // Each voice is only ever rendered by one output thread at a time, so these are threadsafe.
+    float[][] amplitudes;           // current (interpolated) amplitudes
+    float[][] targets;              // amplitudes we're interpolating towards
+    float[][] positions;            // phases, 0...1
+    float[][] increments;           // per-sample phase increments
+    int[][] offsets;                // dephase offsets, in table slots
+
+    public FloatRenderer(Output output, int numVoices, int numPartials)
+        {
+        super(output);
+        amplitudes = new float[numVoices][numPartials];
+        targets = new float[numVoices][numPartials];
+        positions = new float[numVoices][numPartials];
+        increments = new float[numVoices][numPartials];
+        offsets = new int[numVoices][numPartials];
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double tr = with.pitches[s] * Output.INV_SAMPLING_RATE;
+        float scale = (float)(with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER);
+        boolean dephase = with.dephase[s];
+
+        float[] a = amplitudes[s];
+        float[] t = targets[s];
+        float[] p = positions[s];
+        float[] inc = increments[s];
+        int[] off = offsets[s];
+
+        // We only render partials below Nyquist.  In the non-dephase case the ones above are
+        // still brought up to date at the end of the block, in closed form.
+        int cutoff = with.cutoffs[s];
+        int n = cutoff;
+
+        // Gather
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            float v = (float) currentAmp[oi];
+            a[i] = (v < WELL_ABOVE_FLOAT_SUBNORMALS ? 0.0f : v);
+            t[i] = (float) amp[i];
+            p[i] = (float) pos[oi];
+            inc[i] = (float)(freq[i] * tr);
+            off[i] = (dephase ? (int)(Output.MIXING[oi] * Utility.SIN_MULTIPLIER) : 0);
+            }
+
+        final float alpha = (float) Output.PARTIALS_INTERPOLATION_ALPHA;
+        final float oneMinusAlpha = (float) Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+        final float minimum = (float) Output.MINIMUM_VOLUME;
+        final float length = TABLE_LENGTH;
+        final float[] sin = sinTable;
+
+        for(int samp = 0; samp < samples.length; samp++)
+            {
+            float sum = 0;
+            if (dephase)
+                {
+                for(int i = 0; i < n; i++)
+                    {
+                    float v = a[i] * oneMinusAlpha + t[i] * alpha;
+                    a[i] = v;
+                    if (v > minimum)                        // dephased partials only move when audible
+                        {
+                        float w = p[i] + inc[i];
+                        w = w - (int) w;
+                        p[i] = w;
+                        sum += sin[((int)(w * length) + off[i]) & TABLE_MASK] * v;
+                        }
+                    }
+                }
+            else
+                {
+                for(int i = 0; i < n; i++)
+                    {
+                    float v = a[i] * oneMinusAlpha + t[i] * alpha;
+                    a[i] = v;
+                    float w = p[i] + inc[i];
+                    w = w - (int) w;
+                    p[i] = w;
+                    if (v > minimum)
+                        sum += sin[((int)(w * length)) & TABLE_MASK] * v;
+                    }
+                }
+            samples[samp] = sum * scale;
+            }
+
+        // Scatter
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            currentAmp[oi] = a[i];
+            pos[oi] = p[i];
+            }
+
+        // Everyone above Nyquist.  See Output.advancePartials()
+        if (!dephase)
+            {
+            int len = samples.length;
+            double decay = Math.pow(Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, len);
+            for(int i = n; i < pos.length; i++)
+                {
+                int oi = orders[i] & 0xFF;
+                double amplitude = amp[i] + (currentAmp[oi] - amp[i]) * decay;
+                if (amplitude < Output.WELL_ABOVE_SUBNORMALS) amplitude = 0;
+                currentAmp[oi] = amplitude;
+                double position = pos[oi] + freq[i] * tr * len;
+                pos[oi] = position - (int) position;
+                }
+            }
+        }
+    }
@@ -0,0 +1,186 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   Watches how long the Sound Output thread takes to produce each block, and how long the
+   primary voice thread takes to update the Sounds for each block, compared to how long that
+   block lasts in real time, and lowers the quality of the sound when either load gets too high,
+   so as to keep the audio going rather than glitching.
+
+   <p>The Sound Output thread has several levels of quality.  Each is in addition to the ones before it:
+
+   <ol>
+   <li>LEVEL_FULL: nothing is degraded.
+   <li>LEVEL_FEWER_PARTIALS: each voice only renders its lowest REDUCED_PARTIALS_FRACTION of partials.
+   <li>LEVEL_CULL_VOICES: voices more than CULL_RATIO quieter than the loudest one fade out.
+   <li>LEVEL_NO_REVERB: the reverb is bypassed.
+   </ol>
+
+   <p>None of these help the primary voice thread, which has its own level.  If it can't keep up,
+   the Governor switches to LEVEL_COARSE_CONTROL, and the Sounds are only updated every other block.
+   The two are measured and changed independently: each lightens the work of the thread whose load
+   triggered it, and no other.
+
+   <p>Each load is the block's time divided by its duration, smoothed over a few dozen blocks.
+   If it stays above HIGH_LOAD for DEGRADE_BLOCKS blocks, we drop a level.  If it stays below LOW_LOAD
+   for RESTORE_BLOCKS blocks, which is much longer, we go back up a level.  After any change we
+   wait SETTLE_BLOCKS blocks for the smoothed load to reflect it before considering another.  The gap
+   between the two thresholds and the two durations keeps us from flapping back and forth.  Every change
+   is logged to System.err and counted, and whenever the quality is lowered, the Rack's display says so.
+*/
+
+public class Governor
+    {
+    public static final int LEVEL_FULL = 0;
+    public static final int LEVEL_FEWER_PARTIALS = 1;
+    public static final int LEVEL_CULL_VOICES = 2;
+    public static final int LEVEL_NO_REVERB = 3;
+    public static final int LEVEL_COARSE_CONTROL = 4;
+    public static final String[] LEVEL_NAMES = new String[] { "Full", "Fewer Partials", "Cull Quiet Voices", "No Reverb", "Coarse Control" };
+
+    /** Above this load we start degrading. */
+    public static final double HIGH_LOAD = 0.8;
+    /** Below this load we start restoring. */
+    public static final double LOW_LOAD = 0.5;
+    /** How many blocks in a row the load must be high before we degrade one level. */
+    public static final int DEGRADE_BLOCKS = 32;
+    /** How many blocks in a row the load must be low before we restore one level. */
+    public static final int RESTORE_BLOCKS = 4096;
+    /** How many blocks we wait after changing levels before we consider changing again. */
+    public static final int SETTLE_BLOCKS = 256;
+    /** At LEVEL_FEWER_PARTIALS and beyond, the fraction of its partials each voice renders. */
+    public static final double REDUCED_PARTIALS_FRACTION = 0.5;
+    /** At LEVEL_CULL_VOICES and beyond, how much quieter than the loudest voice (in amplitude) a voice may be before it's culled. */
+    public static final double CULL_RATIO = 1.0 / 16;
+
+    // How quickly the smoothed load follows each block
+    static final double LOAD_ALPHA = 0.05;
+
+    // The smoothed load of one thread, and how long it has been high or low
+    static class Meter
+        {
+        volatile double load = 0;
+        int count = 0;
+        int settle = 0;
+
+        // Folds in a block which took NANOS out of BLOCKNANOS.  Returns 1 if we should drop a level,
+        // which is only considered if CANDEGRADE, -1 if we should go back up one, which is only
+        // considered if CANRESTORE, and otherwise 0.
+        int update(long nanos, double blockNanos, boolean canDegrade, boolean canRestore)
+            {
+            double l = load + (nanos / blockNanos - load) * LOAD_ALPHA;
+            load = l;
+            if (settle > 0)
+                {
+                settle--;
+                }
+            else if (l > HIGH_LOAD && canDegrade)
+                {
+                if (count < 0) count = 0;
+                if (++count >= DEGRADE_BLOCKS)
+                    {
+                    count = 0;
+                    settle = SETTLE_BLOCKS;
+                    return 1;
+                    }
+                }
+            else if (l < LOW_LOAD && canRestore)
+                {
+                if (count > 0) count = 0;
+                if (--count <= -RESTORE_BLOCKS)
+                    {
+                    count = 0;
+                    settle = SETTLE_BLOCKS;
+                    return -1;
+                    }
+                }
+            else count = 0;
+            return 0;
+            }
+        }
+
+    volatile int level = LEVEL_FULL;
+    volatile int controlLevel = LEVEL_FULL;
+    volatile int degradations = 0;
+    volatile int restorations = 0;
+    Meter output = new Meter();
+    Meter control = new Meter();
+    double blockNanos;
+
+    /** Builds a governor for blocks of SKIP samples. */
+    public Governor(int skip)
+        {
+        blockNanos = skip * 1.0e9 / Output.SAMPLING_RATE;
+        }
+
+    /** Returns the Sound Output thread's current quality level, from LEVEL_FULL to LEVEL_NO_REVERB. */
+    public int getLevel() { return level; }
+
+    /** Returns the primary voice thread's current quality level, either LEVEL_FULL or LEVEL_COARSE_CONTROL. */
+    public int getControlLevel() { return controlLevel; }
+
+    /** Returns whether either thread's quality has been lowered. */
+    public boolean isDegraded() { return level != LEVEL_FULL || controlLevel != LEVEL_FULL; }
+
+    /** Returns the names of the current quality levels, leaving out any which are LEVEL_FULL unless both are. */
+    public String getLevelName()
+        {
+        int lev = level;
+        int con = controlLevel;
+        if (con == LEVEL_FULL) return LEVEL_NAMES[lev];
+        else if (lev == LEVEL_FULL) return LEVEL_NAMES[con];
+        else return LEVEL_NAMES[lev] + ", " + LEVEL_NAMES[con];
+        }
+
+    /** Returns the Sound Output thread's current smoothed load, where 1.0 means blocks take exactly as long to render as to play. */
+    public double getLoad() { return output.load; }
+
+    /** Returns the primary voice thread's current smoothed load, where 1.0 means updating the Sounds takes exactly as long as a block plays.
+        This is per update, so at LEVEL_COARSE_CONTROL, when there's an update only every other block, the actual load is half of it. */
+    public double getControlLoad() { return control.load; }
+
+    /** Returns how many times the quality has been lowered so far. */
+    public int getDegradations() { return degradations; }
+
+    /** Returns how many times the quality has been raised again so far. */
+    public int getRestorations() { return restorations; }
+
+    /** Called by the Sound Output thread once per block with the time, in nanoseconds, it took to render it. */
+    public void update(long nanos)
+        {
+        int lev = level;
+        int step = output.update(nanos, blockNanos, lev < LEVEL_NO_REVERB, lev > LEVEL_FULL);
+        if (step != 0)
+            setLevel(lev + step);
+        }
+
+    /** Called by the primary voice thread once per Output.go() with the time, in nanoseconds, it took
+        to update the Sounds, not counting any time spent waiting for the next block. */
+    public void updateControl(long nanos)
+        {
+        int con = controlLevel;
+        int step = control.update(nanos, blockNanos, con == LEVEL_FULL, con == LEVEL_COARSE_CONTROL);
+        if (step != 0)
+            setControlLevel(step > 0 ? LEVEL_COARSE_CONTROL : LEVEL_FULL);
+        }
+
+    // The two threads may both change levels at once, so the counts are synchronized
+    synchronized void setLevel(int newLevel)
+        {
+        System.err.println("Governor.setLevel() WARNING: output load " + (int)(output.load * 100) + "%, quality " + LEVEL_NAMES[level] + " -> " + LEVEL_NAMES[newLevel]);
+        if (newLevel > level) degradations++;
+        else restorations++;
+        level = newLevel;
+        }
+
+    synchronized void setControlLevel(int newLevel)
+        {
+        System.err.println("Governor.setControlLevel() WARNING: control load " + (int)(control.load * 100) + "%, quality " + LEVEL_NAMES[controlLevel] + " -> " + LEVEL_NAMES[newLevel]);
+        if (newLevel > controlLevel) degradations++;
+        else restorations++;
+        controlLevel = newLevel;
+        }
+    }
@@ -0,0 +1,187 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer for voices whose partials are exactly harmonic, that is, partial i has
+   frequency i + 1 (as produced by standardizeFrequencies(), Sawtooth, Square, KHarmonics,
+   Drawbars, WaveTable, and so on), and which are not dephased.  When the Harmonic renderer
+   is chosen, Output uses it in place of buildSample() whenever canRender(...) says the
+   voice qualifies; as soon as something like Stretch, Jitter, or Shift detunes the
+   partials, Output falls back to buildSample() again.
+
+   <p>In a harmonic voice, the phase of partial n is n times the phase theta of the
+   fundamental, plus a constant offset phi_n (partials needn't start in phase).  So
+   sin(n theta + phi_n) = Im(z^n) cos phi_n + Re(z^n) sin phi_n, where z = e^(i theta).
+   We compute z once per sample and get all its powers by angle addition, z^(n+4) = z^n z^4,
+   running four such chains side by side so that they don't all wait on one another.  This
+   replaces a table lookup per partial per sample with a handful of multiply-adds.  The
+   offsets are recomputed from Output.positions at the start of every block.
+
+   <p>Amplitudes are interpolated in closed form, as in BlockRenderer: with d = 1 - alpha,
+   a partial's amplitude t samples in is target + (a - target) d^(t + 1), so each sample is just
+   the sum over partials of target times the sine, plus d^(t + 1) times the sum of
+   (a - target) times the sine.  At the end of the block, positions and current amplitudes
+   are advanced just as buildSample() would have advanced them.
+*/
+
+public class HarmonicRenderer extends Renderer
+    {
+    /** How far (relative) a frequency may stray from i + 1 and still count as harmonic. */
+    public static final double EPSILON = 1.0e-6;
+
+    // The number of angle-addition chains we run side by side
+    static final int CHAINS = 4;
+
+    // Per-voice scratch, indexed by partial.  Each voice is only rendered by one output thread at a time.
+    double[][] targetCos;           // target * cos phi
+    double[][] targetSin;           // target * sin phi
+    double[][] deltaCos;            // (a - target) * cos phi
+    double[][] deltaSin;            // (a - target) * sin phi
+    double[][] deltas;              // a - target
+
+    // decay[t] is (1 - PARTIALS_INTERPOLATION_ALPHA)^(t + 1)
+    double[] decay = new double[0];
+
+    public HarmonicRenderer(Output output, int numVoices, int numPartials)
+        {
+        super(output);
+        int len = ((numPartials + CHAINS - 1) / CHAINS) * CHAINS;
+        targetCos = new double[numVoices][len];
+        targetSin = new double[numVoices][len];
+        deltaCos = new double[numVoices][len];
+        deltaSin = new double[numVoices][len];
+        deltas = new double[numVoices][len];
+        }
+
+    /** Returns true if voice S is not dephased, and its partials are all harmonic. */
+    public boolean canRender(int s)
+        {
+        Output.Swap with = output.with;
+        if (with.dephase[s]) return false;
+        double[] freq = with.frequencies[s];
+        for(int i = 0; i < freq.length; i++)
+            {
+            double f = i + 1;
+            double diff = freq[i] - f;
+            if (diff > EPSILON * f || diff < -EPSILON * f)
+                return false;
+            }
+        return true;
+        }
+
+    double[] getDecay(int len)
+        {
+        double[] decay = this.decay;
+        if (decay.length != len)
+            {
+            decay = new double[len];
+            double d = 1.0;
+            for(int t = 0; t < len; t++)
+                {
+                d *= Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+                decay[t] = d;
+                }
+            this.decay = decay;
+            }
+        return decay;
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double pitch = with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        int len = samples.length;
+        double[] decay = getDecay(len);
+
+        double[] tc = targetCos[s];
+        double[] ts = targetSin[s];
+        double[] dc = deltaCos[s];
+        double[] ds = deltaSin[s];
+        double[] del = deltas[s];
+
+        // Gather.  Only partials under Nyquist are heard.
+        int n = pos.length;
+        int audible = with.cutoffs[s];
+        double fundamental = pos[orders[0] & 0xFF];
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double a = currentAmp[oi];
+            if (a < Output.WELL_ABOVE_SUBNORMALS) a = 0;            // see LaneRenderer
+            double target = amp[i];
+            del[i] = a - target;
+            if (i < audible)
+                {
+                double phi = (pos[oi] - (i + 1) * fundamental) * Output.PI2;
+                double c = Utility.fastIntCos(phi);
+                double sn = Utility.fastIntSin(phi);
+                tc[i] = target * c;
+                ts[i] = target * sn;
+                dc[i] = del[i] * c;
+                ds[i] = del[i] * sn;
+                }
+            }
+        int padded = ((audible + CHAINS - 1) / CHAINS) * CHAINS;
+        for(int i = audible; i < padded; i++)
+            {
+            tc[i] = 0; ts[i] = 0; dc[i] = 0; ds[i] = 0;
+            }
+
+        double inc = freq[0] * tr;
+        double scale = with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        for(int t = 0; t < len; t++)
+            {
+            double theta = (fundamental + (t + 1) * inc) * Output.PI2;
+            double r1 = Utility.fastIntCos(theta);
+            double i1 = Utility.fastIntSin(theta);
+            // z^2, z^3, z^4
+            double r2 = r1 * r1 - i1 * i1;
+            double i2 = 2 * r1 * i1;
+            double r3 = r2 * r1 - i2 * i1;
+            double i3 = r2 * i1 + i2 * r1;
+            double wr = r2 * r2 - i2 * i2;
+            double wi = 2 * r2 * i2;
+            double r4 = wr;
+            double i4 = wi;
+
+            double sumTarget = 0;
+            double sumDelta = 0;
+            for(int k = 0; k < padded; k += CHAINS)
+                {
+                sumTarget += (i1 * tc[k] + r1 * ts[k]) + (i2 * tc[k + 1] + r2 * ts[k + 1]) +
+                    (i3 * tc[k + 2] + r3 * ts[k + 2]) + (i4 * tc[k + 3] + r4 * ts[k + 3]);
+                sumDelta += (i1 * dc[k] + r1 * ds[k]) + (i2 * dc[k + 1] + r2 * ds[k + 1]) +
+                    (i3 * dc[k + 2] + r3 * ds[k + 2]) + (i4 * dc[k + 3] + r4 * ds[k + 3]);
+
+                // On to the next four harmonics
+                double tmp;
+                tmp = r1 * wr - i1 * wi; i1 = r1 * wi + i1 * wr; r1 = tmp;
+                tmp = r2 * wr - i2 * wi; i2 = r2 * wi + i2 * wr; r2 = tmp;
+                tmp = r3 * wr - i3 * wi; i3 = r3 * wi + i3 * wr; r3 = tmp;
+                tmp = r4 * wr - i4 * wi; i4 = r4 * wi + i4 * wr; r4 = tmp;
+                }
+            samples[t] = (sumTarget + decay[t] * sumDelta) * scale;
+            }
+
+        // Advance everyone to the end of the block, just as buildSample() would
+        double last = decay[len - 1];
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double a = amp[i] + del[i] * last;
+            if (a < Output.WELL_ABOVE_SUBNORMALS) a = 0;
+            currentAmp[oi] = a;
+            double position = pos[oi] + freq[i] * tr * len;
+            pos[oi] = position - (int) position;
+            }
+        }
+    }
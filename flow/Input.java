@@ -476,6 +476,22 @@ public class Input
         return nrpnMSBWasSentLast[num];
         }
 
+    // Puts every Sound back at the full control rate, since any of them may be listening to a CC or NRPN
+    void hurrySounds()
+        {
+        output.lock();
+        try
+            {
+            int num = output.getNumSounds();
+            for(int i = 0; i < num; i++)
+                output.getSoundUnsafe(i).hurry();
+            }
+        finally
+            {
+            output.unlock();
+            }
+        }
+
     // Processes an incoming CC message
     void processCC(ShortMessage sm)
         {
@@ -514,6 +530,7 @@ public class Input
             try
                 {
                 int num = output.getNumSounds();
+                hurrySounds();
                 if (ccdata.number == CC_SUSTAIN_PEDAL)
                     {
                     if (ccdata.value >= 64)        // sustain is down
@@ -558,6 +575,7 @@ public class Input
                 nrpn[ccdata.number] = (short) ccdata.value;
                 nrpnMSBWasSentLast[ccdata.number] = ccdata.msbSentLast;
                 }
+            hurrySounds();
             }
         else if (ccdata.type == Midi.CCData.TYPE_RPN)
             {
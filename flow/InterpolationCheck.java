@@ -0,0 +1,108 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.io.*;
+import java.util.zip.*;
+import org.json.*;
+import flow.modules.*;
+
+/**
+   Checks that INTERPOLATION_LINEAR doesn't click where INTERPOLATION_EXPONENTIAL doesn't.  We render
+   a note of a patch with each kind of interpolation, through buildSample() (that is, the Standard
+   renderer), and compare the largest jump from one sample to the next.  A click shows up as a jump
+   much larger than the sound otherwise makes, so Linear passes if its largest jump is no more than
+   TOLERANCE larger than Exponential's.  The note is held for two seconds, then released for one.
+
+   <p>By default we check PATCHES: WarmOrganPad, a slow pad of the sort which first showed the
+   breathy clicks described at PARTIALS_INTERPOLATION_ALPHA, and several patches with fast attacks
+   and decays, where the amplitudes move the most from one block to the next.  If the amplitudes
+   jumped to their targets at the start of each block instead of ramping, those would fail.
+
+   <p>This uses an Output which isn't connected to an audio device, and plays the Output Thread's part
+   by hand.  Run it as java flow.InterpolationCheck [patch.flow ...].
+*/
+
+public class InterpolationCheck
+    {
+    /** How much larger Linear's largest jump may be than Exponential's. */
+    public static final double TOLERANCE = 0.05;
+    public static final double PITCH = 220.0;
+    public static final double HOLD_SECONDS = 2.0;
+    public static final double RELEASE_SECONDS = 1.0;
+    /** The patches in flow/patches checked by default. */
+    public static final String[] PATCHES = new String[] { "WarmOrganPad", "Pizzicato", "Tink", "Kotobell", "Harm", "Drawbars" };
+
+    static JSONObject loadPatch(InputStream stream) throws Exception
+        {
+        return new JSONObject(new JSONTokener(new GZIPInputStream(stream)));
+        }
+
+    // Renders a note of PATCH with the given INTERPOLATION, and returns the largest jump from one
+    // sample to the next, and the largest sample.
+    static double[] render(JSONObject patch, int interpolation) throws Exception
+        {
+        Output.interpolation = interpolation;
+        Output.rendererType = Output.RENDERER_STANDARD;
+        Output.controlClock = Output.CONTROL_CLOCK_FIXED_RATE;
+        Output output = new Output(false);
+        Sound sound = new Sound(output);
+
+        Modulation[] mods = Sound.loadModules(patch, Sound.loadFlowVersion(patch));
+        for(int i = 0; i < mods.length; i++)
+            {
+            sound.register(mods[i]);
+            mods[i].setSound(sound);
+            if (mods[i] instanceof Out)
+                sound.setEmits((Out)(mods[i]));
+            mods[i].reset();
+            }
+        sound.setNote(PITCH);
+        sound.setVelocity(1.0);
+        sound.gate();
+
+        double[][] currentAmplitudes = new double[Output.numVoices][Unit.NUM_PARTIALS];
+        double[] samples = new double[Output.skip];
+        int hold = (int)(HOLD_SECONDS * Output.SAMPLING_RATE / Output.skip);
+        int blocks = hold + (int)(RELEASE_SECONDS * Output.SAMPLING_RATE / Output.skip);
+        double last = 0;
+        double maxJump = 0;
+        double maxSample = 0;
+        for(int b = 0; b < blocks; b++)
+            {
+            if (b == hold) sound.release();
+            output.go();
+            output.startBlock();
+            output.buildSamples(0, currentAmplitudes, samples);
+            for(int i = 0; i < samples.length; i++)
+                {
+                maxJump = Math.max(maxJump, Math.abs(samples[i] - last));
+                maxSample = Math.max(maxSample, Math.abs(samples[i]));
+                last = samples[i];
+                }
+            }
+        return new double[] { maxJump, maxSample };
+        }
+
+    public static void main(String[] args) throws Exception
+        {
+        int n = (args.length > 0 ? args.length : PATCHES.length);
+        int failed = 0;
+        for(int p = 0; p < n; p++)
+            {
+            JSONObject patch = loadPatch(args.length > 0 ? new FileInputStream(args[p]) :
+                Output.class.getResourceAsStream("patches/" + PATCHES[p] + ".flow"));
+            double[] exponential = render(patch, Output.INTERPOLATION_EXPONENTIAL);
+            double[] linear = render(patch, Output.INTERPOLATION_LINEAR);
+            boolean pass = (linear[0] <= exponential[0] * (1 + TOLERANCE));
+            if (!pass) failed++;
+            System.err.println("Patch: " + Sound.loadName(patch) + " Pitch: " + PITCH + " Skip: " + Output.skip);
+            System.err.println("Exponential: largest jump " + exponential[0] + " largest sample " + exponential[1]);
+            System.err.println("Linear:      largest jump " + linear[0] + " largest sample " + linear[1]);
+            System.err.println(pass ? "PASS" : "FAIL: Linear clicks");
+            }
+        System.exit(failed == 0 ? 0 : 1);
+        }
+    }
@@ -0,0 +1,100 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   Culls partials which can't be heard because a much louder partial nearby masks them.
+   Output uses this, if it's turned on in the Tuning Parameters, on each voice's partials
+   just after copying them out of the voice and before they're rendered.
+
+   <p>This is a cheap version of the masking models in perceptual audio coders.  We sort the
+   partials of a voice into critical bands, one per Bark, by a table lookup on their frequency.
+   The loudest partial in each band masks everything in its own band up to MASKING_OFFSET dB below it,
+   and its masking spreads out into the neighboring bands, falling off by SPREAD_UP dB per Bark towards higher
+   frequencies and by SPREAD_DOWN dB per Bark towards lower ones (low tones mask high ones much more than
+   the reverse).  Both spreads are done in a single pass each way across the bands.  Any partial below the
+   resulting threshold in its band has its target amplitude set to zero, so that it fades out like
+   any other partial whose amplitude drops.  The work is linear in the number of partials.
+*/
+
+public class Masking
+    {
+    /** How far below a masker, in dB, partials in its own band are masked. */
+    public static final double MASKING_OFFSET = 18.0;
+    /** How quickly masking falls off towards higher bands, in dB per Bark. */
+    public static final double SPREAD_UP = 10.0;
+    /** How quickly masking falls off towards lower bands, in dB per Bark. */
+    public static final double SPREAD_DOWN = 25.0;
+    /** The number of critical bands. */
+    public static final int NUM_BANDS = 25;
+
+    static final double OFFSET_FACTOR = Math.pow(10, -MASKING_OFFSET / 20);
+    static final double UP_FACTOR = Math.pow(10, -SPREAD_UP / 20);
+    static final double DOWN_FACTOR = Math.pow(10, -SPREAD_DOWN / 20);
+
+    // Maps frequency, in steps of TABLE_RESOLUTION Hz, to band, up to Nyquist
+    static final double TABLE_RESOLUTION = 10.0;
+    static final byte[] bands = new byte[(int)(Output.SAMPLING_RATE / 2 / TABLE_RESOLUTION) + 2];
+
+    static
+        {
+        for(int i = 0; i < bands.length; i++)
+            {
+            double f = i * TABLE_RESOLUTION;
+            // Zwicker and Terhardt's approximation of the Bark scale
+            double bark = 13 * Math.atan(0.00076 * f) + 3.5 * Math.atan((f / 7500) * (f / 7500));
+            bands[i] = (byte) Math.min((int) bark, NUM_BANDS - 1);
+            }
+        }
+
+    // Scratch, for the primary voice thread only
+    double[] maskers = new double[NUM_BANDS];
+    byte[] partialBands = new byte[Unit.NUM_PARTIALS];
+
+    /** Sets to zero those of the first CUTOFF amplitudes in AMP which are masked, given their
+        frequencies FREQ at the given PITCH, and returns how many were. */
+    public int cull(double[] amp, double[] freq, double pitch, int cutoff)
+        {
+        double[] maskers = this.maskers;
+        byte[] partialBands = this.partialBands;
+        for(int b = 0; b < NUM_BANDS; b++)
+            maskers[b] = 0;
+
+        double scale = pitch / TABLE_RESOLUTION;
+        for(int i = 0; i < cutoff; i++)
+            {
+            int slot = (int)(freq[i] * scale);
+            if (slot < 0) slot = 0;
+            else if (slot >= bands.length) slot = bands.length - 1;
+            byte b = bands[slot];
+            partialBands[i] = b;
+            if (amp[i] > maskers[b]) maskers[b] = amp[i];
+            }
+
+        // Spread upwards, then downwards
+        for(int b = 1; b < NUM_BANDS; b++)
+            {
+            double m = maskers[b - 1] * UP_FACTOR;
+            if (m > maskers[b]) maskers[b] = m;
+            }
+        for(int b = NUM_BANDS - 2; b >= 0; b--)
+            {
+            double m = maskers[b + 1] * DOWN_FACTOR;
+            if (m > maskers[b]) maskers[b] = m;
+            }
+
+        int culled = 0;
+        for(int i = 0; i < cutoff; i++)
+            {
+            double a = amp[i];
+            if (a > Output.MINIMUM_VOLUME && a < maskers[partialBands[i]] * OFFSET_FACTOR)
+                {
+                amp[i] = 0;
+                culled++;
+                }
+            }
+        return culled;
+        }
+    }
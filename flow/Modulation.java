@@ -140,7 +140,7 @@ public abstract class Modulation implements Cloneable
 
     /** Called when the system wishes the Modulation to reset itself to a pristine state. 
         Be sure to call super.reset(); */
-    public void reset() { }
+    public void reset() { if (sound != null) sound.wake(); }
 
     /** Called when the system wishes to inform the Modulation that a NOTE ON message was received. 
         Be sure to call super.gate(); */
@@ -293,10 +293,23 @@ public abstract class Modulation implements Cloneable
     /** Sets Input Modulation port NUM to the Output Modulation port INDEX of the given modulation. */
     public void setModulation(Modulation mod, int num, int index)
         {
+        Modulation old = modulations[num];
         if (mod instanceof Constant)
             lastModulations[num] = (Constant)mod;
         modulations[num] = mod;
         modulationIndexes[num] = index;
+        if (sound != null)
+            {
+            if (mod instanceof Constant && old instanceof Constant)
+                {
+                // Just a new value, as when a dial is turned, so there's no need to recompile the patch.
+                // But we make sure we see a change, even if the old Constant had been changed more often.
+                if (mod.changeVersion <= old.changeVersion)
+                    mod.changeVersion = old.changeVersion + 1;
+                sound.refold();
+                }
+            else sound.wake();
+            }
         }
         
     /** Returns Input Modulation port NUM. */
@@ -329,6 +342,7 @@ public abstract class Modulation implements Cloneable
         lastModulations[num] = defaultModulations[num];
         modulations[num] = defaultModulations[num];
         modulationIndexes[num] = 0;
+        if (sound != null) sound.wake();
         }
                 
     /** Returns Input Modulation port NUM to its last Constant value. */
@@ -336,6 +350,7 @@ public abstract class Modulation implements Cloneable
         {
         modulations[num] = lastModulations[num];
         modulationIndexes[num] = 0;
+        if (sound != null) sound.wake();
         }
                 
     /** Returns the number of Input Modulation ports. */
@@ -627,11 +642,22 @@ public abstract class Modulation implements Cloneable
             }
         }
     
+    // Stores an output value, and if it's new, notes that our outputs have changed.  Split out of 
+    // setModulationOutput(...) for the same reason as printModulationOutputError(...).
+    void storeModulationOutput(int index, double val)
+        {
+        if (modulationOutputs[index] != val)
+            {
+            modulationOutputs[index] = val;
+            changeVersion++;
+            }
+        }
+    
     /** Sets the current output value of modulation port INDEX to VAL. */
     public void setModulationOutput(int index, double val) 
         {
         if (val < 0 || val > 1) printModulationOutputError(val);
-        else modulationOutputs[index] = val; 
+        else storeModulationOutput(index, val); 
         }
     
     /** Returns the current output value of modulation port INDEX to VAL. */
@@ -667,13 +693,25 @@ public abstract class Modulation implements Cloneable
         {
         return triggered[num];
         }
+
+    /** Returns whether the trigger of any Output Modulation port is set. */
+    public boolean isAnyOutputTriggered()
+        {
+        for(int i = 0; i < triggered.length; i++)
+            if (triggered[i]) return true;
+        return false;
+        }
         
     /** Sets trigger NUM of Output Modulation port to the given ISTRIGGERED value, and sets its count to TRIGGERCOUNT. */
     // this is public, rather than protected, so Macro can override it
     public void setTriggerValues(boolean isTriggered, int _triggerCount, int num)
         {
-        triggered[num] = isTriggered;
-        triggerCount[num] = _triggerCount;
+        if (triggered[num] != isTriggered || triggerCount[num] != _triggerCount)
+            {
+            triggered[num] = isTriggered;
+            triggerCount[num] = _triggerCount;
+            changeVersion++;
+            }
         }
     
     /** Returns the clock tick value.  If we are syncing to MIDI clock,
@@ -818,11 +856,98 @@ public abstract class Modulation implements Cloneable
         // Current output triggers
         obj.triggered = (boolean[])(triggered.clone());
         obj.triggerCount = (int[])(triggerCount.clone());
+        // Nothing's been seen yet
+        obj.modulationVersions = new int[0];
 
         return obj;
         }
 
 
+    ///// INCREMENTAL EVALUATION
+    /// Every Modulation has a change version, a counter which goes up whenever its outputs may have
+    /// changed: a Modulation bumps it whenever one of its modulation output values or triggers changes,
+    /// and a Unit bumps it whenever it runs at all, since we can't cheaply tell whether it changed its
+    /// partials.  The Sound runs its Modulations through a Plan.  For most Modulations this just 
+    /// calls go().  But if a Modulation says it isIncremental(), the Plan first compares the change
+    /// versions of everything plugged into it against those it saw the last time it ran, and if none
+    /// has changed, skips go() and leaves its outputs as they were.  Anything else which might change
+    /// the outcome -- options, patching, gate and release, a new note or bend, MIDI CC -- makes
+    /// the Sound force every Modulation to run on the next block (see Sound.markStale()).  And a Modulation
+    /// which set any of its triggers when it last ran is never skipped, since only go() resets them.
+        
+    int changeVersion = 0;
+    // The change versions of our modulation inputs when we last ran
+    int[] modulationVersions = new int[0];
+    
+    /** Returns the change version of the Modulation, which goes up whenever its outputs may have changed. */
+    public int getChangeVersion() { return changeVersion; }
+        
+    /** Override this to return true if your go() depends only on your modulation (and unit) inputs, 
+        your options, and the Sound's note, velocity, aftertouch, and MIDI controllers, so there's no
+        need to call it again if none of those have changed.  Modulations which hold state from block to
+        block, follow the clock, or are random must return false.  By default this returns dependsOnlyOnInputs(). */
+    public boolean isIncremental() { return dependsOnlyOnInputs(); }
+        
+    /** Override this to return true if your go() depends on nothing at all but your inputs and your options:
+        not even the Sound's note, velocity, aftertouch, or MIDI controllers.  Then if your inputs are all Constants,
+        your outputs never change, and Plan runs you only once.  By default this returns false. */
+    public boolean dependsOnlyOnInputs() { return false; }
+        
+    /** Override this to return true if your go() measures time by how many times it's been called, rather than
+        by the clock: a delay line, say, or smoothing by a fixed fraction each call.  A Sound with one of these in its
+        patch always updates every block, even with adaptive control rate on, since updating less often would slow 
+        you down.  By default this returns false. */
+    public boolean countsBlocks() { return false; }
+        
+    /** Override this to return true if your go() changes anything besides your own outputs, such as the 
+        Sound's note or another Modulation's options, so you must run even if nothing is plugged into you.  
+        By default this returns false. */
+    public boolean hasSideEffects() { return false; }
+
+    /** Override this to return true if your go() would produce the same outputs in every Sound, given
+        the same inputs: that is, it reads nothing belonging to the voice (gate, release, note, velocity, aftertouch,
+        MIDI controllers) and isn't random.  If everything plugged into you is voice-invariant too, the Plan of only
+        the first Sound in the group runs you, and the others just copy your outputs (see copyOutputs(...)).
+        By default this returns dependsOnlyOnInputs(). */
+    public boolean isVoiceInvariant() { return dependsOnlyOnInputs(); }
+
+    /** Sets our outputs to those of OTHER, the same Modulation in the same patch in another Sound, in place of
+        calling go().  FRESH is true the first time this is done since the Sound's patch changed.  Override this
+        to copy more outputs, and be sure to call super.copyOutputs(...). */
+    public void copyOutputs(Modulation other, boolean fresh)
+        {
+        for(int i = 0; i < modulationOutputs.length; i++)
+            storeModulationOutput(i, other.modulationOutputs[i]);
+        for(int i = 0; i < triggered.length; i++)
+            setTriggerValues(other.triggered[i], other.triggerCount[i], i);
+        }
+
+    /** Returns true if the change version of anything plugged into us differs from when
+        we last checked, and records the new ones. Override this to add more inputs, and be 
+        sure to call super.inputsChanged(). */
+    protected boolean inputsChanged()
+        {
+        boolean changed = false;
+        Modulation[] modulations = this.modulations;
+        int[] seen = modulationVersions;
+        if (seen.length != modulations.length)
+            {
+            seen = modulationVersions = new int[modulations.length];
+            changed = true;
+            }
+        for(int i = 0; i < modulations.length; i++)
+            {
+            int v = modulations[i].changeVersion;
+            if (seen[i] != v)
+                {
+                seen[i] = v;
+                changed = true;
+                }
+            }
+        return changed;
+        }
+
+
     ///// JSON Serialization
     public static final int SERIALIZATION_NOT_FOUND = -1;
     String id;
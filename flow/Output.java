@@ -76,6 +76,72 @@ public class Output
     public static final int DEFAULT_SKIP = 32;
     static int skip = -1;
 
+    /** How many milliseconds of audio the Sound Output thread tries to keep ready ahead of the
+        audio device, in a ring buffer drained by a separate Audio Device thread.  This is on top
+        of the device's own buffer, and soaks up hiccups in synthesis at the cost of that much more latency.  
+        If 0, there is no ring buffer, and the Sound Output thread writes straight to the device.
+        Whenever the device nearly runs dry anyway, the target grows by FILL_TARGET_STEP milliseconds, up to
+        FILL_TARGET_MAX_MULTIPLE times the chosen value, and after FILL_TARGET_RELAX_SECONDS without 
+        trouble it shrinks back by the same step. */
+    public static final int DEFAULT_FILL_TARGET = 0;
+    public static final int FILL_TARGET_STEP = 1;
+    public static final int FILL_TARGET_MAX_MULTIPLE = 4;
+    public static final int FILL_TARGET_RELAX_SECONDS = 10;
+    static int fillTarget = -1;
+
+    /** The most partials, across all voices, that we render at any one time, or 0 for no limit beyond
+        Unit.NUM_PARTIALS per voice.  Every block the primary voice thread keeps the loudest partialBudget
+        partials (by amplitude times voice velocity) and sets the targets of all the others to zero, so they 
+        fade out just as if their voices had dropped them.  */
+    public static final int DEFAULT_PARTIAL_BUDGET = 0;
+    static int partialBudget = DEFAULT_PARTIAL_BUDGET;
+
+    /** Whether partials masked by louder ones nearby are culled before rendering (see Masking). */
+    public static final boolean DEFAULT_MASKING = false;
+    static boolean masking = DEFAULT_MASKING;
+
+    /** Whether steady voices are updated less often.  A voice whose partials have barely changed for 
+        a while has its Sound.go() called only every 2nd, then 4th, then 8th block (see Sound.updateControlRate(...)),
+        and goes back to every block as soon as they change again, or it receives MIDI, or it's woken.  Between updates
+        its target amplitudes ramp linearly from one update to the next (see rampControl(...)).  A voice whose patch 
+        counts blocks rather than following the clock (see Modulation.countsBlocks()) is always updated every block. */
+    public static final boolean DEFAULT_ADAPTIVE_CONTROL_RATE = false;
+    static boolean adaptiveControlRate = DEFAULT_ADAPTIVE_CONTROL_RATE;
+
+    /** Whether a Governor lowers the sound quality when the Sound Output thread or the primary voice thread can't keep up. */
+    public static final boolean DEFAULT_LOAD_SHEDDING = false;
+    static boolean loadShedding = DEFAULT_LOAD_SHEDDING;
+
+    /** The available Renderers, which convert partials into samples.  RENDERER_STANDARD
+        is Output's own sample-by-sample loop, buildSample().  RENDERER_LANES processes
+        partials in lanes (see LaneRenderer).  RENDERER_BLOCK builds the whole block
+        one partial at a time (see BlockRenderer).  RENDERER_PHASOR runs each partial as
+        a rotating phasor rather than a table lookup (see PhasorRenderer).  RENDERER_SPECTRAL
+        synthesizes partials with an inverse FFT (see SpectralRenderer).  RENDERER_FLOAT does
+        its per-sample work in single precision (see FloatRenderer).  RENDERER_HARMONIC is
+        buildSample() with fast paths for voices whose partials are exactly harmonic (see
+        HarmonicRenderer and WavetableRenderer).  */
+    public static final int RENDERER_STANDARD = 0;
+    public static final int RENDERER_LANES = 1;
+    public static final int RENDERER_BLOCK = 2;
+    public static final int RENDERER_PHASOR = 3;
+    public static final int RENDERER_SPECTRAL = 4;
+    public static final int RENDERER_FLOAT = 5;
+    public static final int RENDERER_HARMONIC = 6;
+    public static final String[] RENDERER_NAMES = new String[] { "Standard", "Lanes", "Block", "Phasor", "Spectral", "Float", "Harmonic" };
+    public static final int DEFAULT_RENDERER = RENDERER_STANDARD;
+    static int rendererType = -1;
+
+    /** How buildSample() moves each partial's amplitude towards its target.  INTERPOLATION_EXPONENTIAL
+        moves it PARTIALS_INTERPOLATION_ALPHA of the way every sample.  INTERPOLATION_LINEAR instead works
+        out, once per block, where the exponential would have ended up at the end of the block, and ramps
+        there linearly, which is cheaper per sample.  Other Renderers do their own interpolation. */
+    public static final int INTERPOLATION_EXPONENTIAL = 0;
+    public static final int INTERPOLATION_LINEAR = 1;
+    public static final String[] INTERPOLATION_NAMES = new String[] { "Exponential", "Linear" };
+    public static final int DEFAULT_INTERPOLATION = INTERPOLATION_EXPONENTIAL;
+    static int interpolation = -1;
+
     /** The most voices you're permitted to register with the Output. 
         Obviously more voices, more CPU usage.
     */
@@ -101,6 +167,32 @@ public class Output
     public static final int DEFAULT_NUM_OUTPUTS_PER_THREAD = 2;
     static int numOutputsPerThread = -1;
 
+    /** How Sound.go() and buildSamples(...) are spread across threads.  SCHEDULER_STATIC gives
+        each thread a fixed numVoicesPerThread voices (or numOutputsPerThread outputs).
+        SCHEDULER_WORK_STEALING has one thread per core take voices, heaviest first, from a shared 
+        list until they're all done (see Scheduler), and ignores the per-thread settings. */
+    public static final int SCHEDULER_STATIC = 0;
+    public static final int SCHEDULER_WORK_STEALING = 1;
+    public static final String[] SCHEDULER_NAMES = new String[] { "Static", "Work Stealing" };
+    public static final int DEFAULT_SCHEDULER = SCHEDULER_STATIC;
+    static int scheduler = -1;
+
+    /** What paces the primary voice thread.  With CONTROL_CLOCK_FREE_RUNNING, go() runs once each time the 
+        Output Thread starts a block, without ever blocking it, and the Sounds see whatever the tick happens 
+        to be at the time.  With CONTROL_CLOCK_FIXED_RATE, go() runs exactly once per block of skip samples, 
+        driven by the Output Thread's block count, and the Sounds see the tick at which their partials 
+        will start being emitted, so envelopes and LFOs are exact to the sample.  */
+    public static final int CONTROL_CLOCK_FREE_RUNNING = 0;
+    public static final int CONTROL_CLOCK_FIXED_RATE = 1;
+    public static final String[] CONTROL_CLOCK_NAMES = new String[] { "Free Running", "Fixed Rate" };
+    public static final int DEFAULT_CONTROL_CLOCK = CONTROL_CLOCK_FREE_RUNNING;
+    static int controlClock = -1;
+
+    /** Under CONTROL_CLOCK_FIXED_RATE, how many blocks ahead of the Output Thread the primary voice thread
+        may get: it builds the partials for the block after the one being emitted.  Any more and the triple
+        buffer would throw away partials, since it only holds the latest ones. */
+    public static final int RENDER_AHEAD = 1;
+
     public static final double DEFAULT_VOLUME_MULTIPLIER = 2000;
 
     public static final float DEFAULT_MASTER_GAIN = 0.0f;
@@ -108,6 +200,11 @@ public class Output
     // If a partial's volume is very low, we don't even bother computing its sample contribution, but just set it to zero.
     static final double MINIMUM_VOLUME = (1.0 / 65536 / 256);  // 0.0001
 
+    // How long, in samples, a partial stays on its voice's audible list after its amplitude drops below
+    // MINIMUM_VOLUME, so that its current amplitude can decay away.  Even an amplitude of 40 falls under
+    // MINIMUM_VOLUME within 1024 samples at PARTIALS_INTERPOLATION_ALPHA.
+    static final int AUDIBLE_TAIL = 1024;
+
     // Output holds the input.  That makes total sense, right?  Right.  :-) 
     Input input;
     
@@ -143,9 +240,25 @@ public class Output
         masterGain = Prefs.getLastMasterGain();
         stereo = Prefs.getLastStereo();
         skip = Prefs.getLastSkip();   
+        rendererType = Prefs.getLastRenderer();
+        interpolation = Prefs.getLastInterpolation();
+        scheduler = Prefs.getLastScheduler();
+        controlClock = Prefs.getLastControlClock();
+        fillTarget = Prefs.getLastFillTarget();
+        loadShedding = Prefs.getLastLoadShedding();
+        partialBudget = Prefs.getLastPartialBudget();
+        masking = Prefs.getLastMasking();
+        adaptiveControlRate = Prefs.getLastAdaptiveControlRate();
         }
     
     public Output()
+        {
+        this(true);
+        }
+
+    // Builds an Output.  If LIVE is false, the Output isn't connected to any audio device, and doesn't start the
+    // Sound Output thread, so it can be driven by hand, as AllocationCheck and InterpolationCheck do.
+    Output(boolean live)
         {
         for(int i = 0; i < MAX_GROUPS; i++)
             {
@@ -163,28 +276,50 @@ public class Output
         // I'd like to do stereo but I can't get Java to do it without glitching
         audioFormat = new AudioFormat( SAMPLING_RATE, 16, (isStereo() ? 2 : 1), true, false );
 
-        Mixer.Info[] mixers = getSupportedMixers();
-        String mix = Prefs.getLastAudioDevice();
-        boolean found = false;
-        for (int i = 0; i < mixers.length; i++)
+        if (live)
             {
-            if (mixers[i].getName().equals(mix))
+            Mixer.Info[] mixers = getSupportedMixers();
+            String mix = Prefs.getLastAudioDevice();
+            boolean found = false;
+            for (int i = 0; i < mixers.length; i++)
                 {
-                found = true;
-                setMixer(mixers[i]);
+                if (mixers[i].getName().equals(mix))
+                    {
+                    found = true;
+                    setMixer(mixers[i]);
+                    }
                 }
+            if (!found) setMixer(null); // sets to the first one, which is the default normally
             }
-        if (!found) setMixer(null); // sets to the first one, which is the default normally
 
-        swap = new Swap();
-        with = new Swap();
-        startOutputThread();
+        partials = new TripleBuffer<Swap>(new Swap(), new Swap(), new Swap());
+        if (loadShedding) governor = new Governor(skip);
+        with = partials.acquire();
+        renderer = buildRenderer(rendererType);
+        if (rendererType == RENDERER_HARMONIC)
+            {
+            harmonicRenderer = new HarmonicRenderer(this, numVoices, Unit.NUM_PARTIALS);
+            wavetableRenderer = new WavetableRenderer(this, numVoices, Unit.NUM_PARTIALS);
+            }
+        tails = new int[numVoices][Unit.NUM_PARTIALS];
+        silentSamples = new long[numVoices];
+        rampStarts = new double[numVoices][Unit.NUM_PARTIALS];
+        rampIncrements = new double[numVoices][Unit.NUM_PARTIALS];
+        if (adaptiveControlRate)
+            {
+            controlFrom = new double[numVoices][Unit.NUM_PARTIALS];
+            controlCurrent = new double[numVoices][Unit.NUM_PARTIALS];
+            controlOrders = new byte[numVoices][Unit.NUM_PARTIALS];
+            controlStep = new int[numVoices];
+            controlSteps = new int[numVoices];
+            }
+        if (live) startOutputThread();
 
         input = new Input(this);
         for(int i = 0; i < standardOrders.length; i++)
             standardOrders[i] = (byte)i;
             
-        audioInput = new AudioInput(this);
+        if (live) audioInput = new AudioInput(this);
         }
 
     /** Returns the currently used Mixer */
@@ -277,6 +412,23 @@ public class Output
 
     void syncTick() { syncTick = tick; }
 
+    // The number of blocks the Output Thread has started so far.  Block b is emitted starting at tick b * skip.
+    volatile int blocksStarted = 0;
+    // Under CONTROL_CLOCK_FIXED_RATE, the block whose partials go() is building
+    int controlBlock = 0;
+
+    // Called at the start of go() under CONTROL_CLOCK_FIXED_RATE.  Waits until controlBlock is no more than
+    // RENDER_AHEAD blocks ahead of the Output Thread, then sets the sync tick to the start of controlBlock.
+    // If instead we've fallen behind, we skip ahead to the block about to be started rather than trying to catch up.
+    void awaitControlBlock()
+        {
+        if (controlBlock < blocksStarted)
+            controlBlock = blocksStarted;
+        while(controlBlock - blocksStarted > RENDER_AHEAD - 1)
+            java.util.concurrent.locks.LockSupport.parkNanos((long)(skip * 1.0e9 / SAMPLING_RATE));
+        syncTick = controlBlock * skip;
+        }
+
     /** Returns the Output's current tick.  Note that TICK is presently an INTEGER.  This means it will 
         roll over to a negative value once every 13.5 hours at 44100, once every 12.4 hours at 48000, 
         or once every 27 hours at 22050.  It's not implemented as a long
@@ -443,23 +595,14 @@ public class Output
         
 
 
-    // This is the lightweight semaphore between the Output thread and the primary
-    // voice thread.  The primary voice thread sets this to TRUE to indicate that 
-    // it has new partials to emit.  The Output thread grabs the partials and
-    // starts emitting them, and then sets the variable to TRUE.  The primary
-    // voice thread works in the background on the next partials, then spin-waits
-    // until the variable is TRUE, then submits new partials etc.
-    volatile boolean emitsReady;
-    
-    
     // This reminds the Primary Voice Thread that it has already created the
     // per-voice threads.
     boolean soundThreadsStarted = false;
 
-    // Locks for negotiating between the primary voice thread and the per-voice threads
-    // These are managed via blockVoiceUntil() and signalVoice()
-    Object[] voiceLocks;
-    boolean[] lightweightSemaphores;
+    // Barrier between the primary voice thread and the per-voice threads
+    Barrier voiceBarrier;
+    // Or, if we're work stealing, the scheduler which runs Sound.go()
+    Scheduler voiceScheduler;
         
     volatile boolean onlyPlayFirstSound;
     /** Returns whether we are only playing the first sound, or all sounds. */
@@ -490,6 +633,15 @@ public class Output
         float reverbRoomSize = 0.5f;
         float reverbDamp = 0.5f;
         boolean dephase[];
+        boolean spectral[];
+        // The index of each voice's first partial above Nyquist (see nyquistCutoff()), or beyond
+        // which the Governor won't let us render, whichever is lower
+        int[] cutoffs;
+        // The indices of each voice's partials worth rendering, in increasing order (see buildAudible())
+        int[][] audible;
+        int[] numAudible;
+        // Voices with nothing on their audible lists, which need not be rendered at all
+        boolean[] silent;
               
         public Swap()
             {
@@ -500,35 +652,47 @@ public class Output
             pitches = new double[numVoices];
             velocities = new double[numVoices];
             dephase = new boolean[numVoices];
+            spectral = new boolean[numVoices];
+            cutoffs = new int[numVoices];
+            audible = new int[numVoices][Unit.NUM_PARTIALS];
+            numAudible = new int[numVoices];
+            silent = new boolean[numVoices];
             }
         }
     
-    // The primary voice thread sets these
-    Swap swap;
+    // The primary voice thread fills out the writable Swap and publishes it, and
+    // the Output thread acquires the most recently published one as "with", which
+    // it uses while the primary thread is busy building new partials.
+    TripleBuffer<Swap> partials;
     
-    // The Output thread swaps "swap" with "with", and then uses the
-    // with-partials while the primary thread is busy building new 
-    // partials for swap again.
+    // The Output thread's current partials
     Swap with;
         
     
-    // Called by the Output Thread to check to see if new partials are
-    // waiting, and if so, to swap and use them.    
+    // Called by the Output Thread to pick up the newest partials, if any.
     void checkAndSwap()
         {
-        // notice that we're effectively spin-waiting here.  
-        if (emitsReady)
-            {
-            Swap temp = swap;
-            swap = with;
-            with = temp;
-            emitsReady = false;
-            }
-        else
-            {
-            //Thread.currentThread().yield();           // we don't want the output thread to yield...
-            }
+        with = partials.acquire();
+        }
+
+    // Called by the Output Thread at the start of each block.  Picks up the latest partials, counts the block,
+    // and wakes the primary voice thread if it's waiting for it.
+    void startBlock()
+        {
+        checkAndSwap();
+        blocksStarted++;                        // only the Output Thread writes this
+        Thread waiting = blockWaiter;
+        if (waiting != null)
+            java.util.concurrent.locks.LockSupport.unpark(waiting);
         }
+
+    /** Returns how many blocks of partials the voices have produced which the Output Thread
+        never got around to emitting, because newer ones had arrived in the meantime. */
+    public long getMissedFrames() { return partials.getMissed(); }
+
+    /** Returns how many times the Output Thread found no new partials at the start of a block,
+        and had to emit the previous partials again. */
+    public long getDuplicatedFrames() { return partials.getDuplicated(); }
       
     float[][] freeverbInput = new float[2][1];
     float[][] freeverbOutput = new float[2][1];
@@ -594,20 +758,21 @@ public class Output
         double v = _with.velocities[s];
         double pitch = _with.pitches[s];
         double tr = pitch * INV_SAMPLING_RATE;
+        // We only visit the partials on the audible list.  The rest are brought up to date 
+        // once per block by advancePartials().
+        int[] audible = _with.audible[s];
+        int numAudible = _with.numAudible[s];
         
         if (_with.dephase[s])                    // this is a manual hoist
             {
-            for (int i = 0; i < pos.length; i++)
+            for (int j = 0; j < numAudible; j++)
                 {
+                int i = audible[j];
                 double frequency = freq[i];
                                                                 
                 // Because we're mixing, we can just ignore the higher frequency stuff, which gives us a speed boost.
                 // However if the user wants to switch back to non-mixing, it might produce a pop because we have
-                // reset everything.
-                if (frequency * pitch > NYQUIST)
-                    {
-                    break;
-                    }
+                // reset everything.  [The audible list already stops at Nyquist]
 
                 int oi = orders[i] & 0xFF;           // if we're using 256 partials, they need to be all positive
                                         
@@ -633,8 +798,9 @@ public class Output
             }
         else
             {
-            for (int i = 0; i < pos.length; i++)
+            for (int j = 0; j < numAudible; j++)
                 {
+                int i = audible[j];
                 double frequency = freq[i];
                 int oi = orders[i] & 0xFF;           // if we're using 256 partials, they need to be all positive
                                                         
@@ -648,7 +814,8 @@ public class Output
                 if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;          // undenormalize prior to next go-around
                 currentAmp[oi] = amplitude;
                                 
-                // Unlike the dephase situation, we MUST update the position for all partials            
+                // Unlike the dephase situation, we MUST update the position for all partials.
+                // Those not on the audible list are handled by advancePartials().
                 
                 //if (amplitude != 0)
                 // 	System.err.println("-->" + i + " " + frequency + " " + oi);
@@ -658,7 +825,7 @@ public class Output
                         
                 // only here can we avoid doing the fastSin.  But in truth this is just an array lookup at this point.
                 
-                if (frequency * pitch <= NYQUIST && amplitude > MINIMUM_VOLUME)
+                if (amplitude > MINIMUM_VOLUME)         // the audible list already stops at Nyquist
                     {
                     sample += Utility.fastSin(position * PI2) * amplitude;
                     }
@@ -667,7 +834,292 @@ public class Output
 
         return sample * v;
         }
+
+    // Linear amplitude ramps for buildSampleLinear(), indexed by position in the audible list 
+    double[][] rampStarts;
+    double[][] rampIncrements;
+
+    // Sets up the linear amplitude ramps of the audible partials of voice S for the next LEN samples.
+    // Each ramp ends where the exponential interpolation of buildSample() would have ended up, so
+    // the two converge equally fast.  The current amplitudes are set to the ends of the ramps.
+    void buildRamps(int s, double[][] currentAmplitudes, int len)
+        {
+        Swap _with = with;
+        double[] amp = _with.amplitudes[s];
+        byte[] orders = _with.orders[s];
+        double[] currentAmp = currentAmplitudes[s];
+        int[] audible = _with.audible[s];
+        int numAudible = _with.numAudible[s];
+        double[] starts = rampStarts[s];
+        double[] increments = rampIncrements[s];
+        double decay = Math.pow(ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, len);
+        double invLen = 1.0 / len;
         
+        for (int j = 0; j < numAudible; j++)
+            {
+            int i = audible[j];
+            int oi = orders[i] & 0xFF;
+            double start = currentAmp[oi];
+            double end = amp[i] + (start - amp[i]) * decay;
+            if (end < WELL_ABOVE_SUBNORMALS) end = 0;           // so nothing in between can be subnormal either
+            starts[j] = start;
+            increments[j] = (end - start) * invLen;
+            currentAmp[oi] = end;
+            }
+        }
+
+    // Builds sample SAMP (0 ... skip - 1) of the current block, just like buildSample(), but using the
+    // linear amplitude ramps set up by buildRamps().  There's no read-modify-write of the current amplitudes,
+    // and no need to undenormalize.
+    double buildSampleLinear(int s, int samp)
+        {
+        double sample = 0;
+        Swap _with = with;
+        double[] freq = _with.frequencies[s];
+        byte[] orders = _with.orders[s];
+        double[] pos = positions[s];
+        double tr = _with.pitches[s] * INV_SAMPLING_RATE;
+        int[] audible = _with.audible[s];
+        int numAudible = _with.numAudible[s];
+        double[] starts = rampStarts[s];
+        double[] increments = rampIncrements[s];
+        double k = samp + 1;
+        
+        if (_with.dephase[s])
+            {
+            for (int j = 0; j < numAudible; j++)
+                {
+                double amplitude = starts[j] + increments[j] * k;
+                if (amplitude > MINIMUM_VOLUME)
+                    {
+                    int i = audible[j];
+                    int oi = orders[i] & 0xFF;
+                    double position = pos[oi] + freq[i] * tr;
+                    position = position - (int) position;
+                    pos[oi] = position;
+                    sample += Utility.fastSin(position * PI2 + MIXING[oi]) * amplitude;
+                    }
+                }
+            }
+        else
+            {
+            for (int j = 0; j < numAudible; j++)
+                {
+                int i = audible[j];
+                int oi = orders[i] & 0xFF;
+                double amplitude = starts[j] + increments[j] * k;
+                double position = pos[oi] + freq[i] * tr;
+                position = position - (int) position;
+                pos[oi] = position;
+                if (amplitude > MINIMUM_VOLUME)
+                    {
+                    sample += Utility.fastSin(position * PI2) * amplitude;
+                    }
+                }
+            }
+
+        return sample * _with.velocities[s];
+        }
+        
+    // The Renderer chosen at startup, or null if we're just using buildSample()
+    Renderer renderer;
+
+    Renderer buildRenderer(int type)
+        {
+        switch(type)
+            {
+            case RENDERER_LANES: return new LaneRenderer(this, numVoices, Unit.NUM_PARTIALS);
+            case RENDERER_BLOCK: return new BlockRenderer(this, numVoices, skip);
+            case RENDERER_PHASOR: return new PhasorRenderer(this, numVoices, Unit.NUM_PARTIALS);
+            case RENDERER_SPECTRAL: return new SpectralRenderer(this, numVoices);
+            case RENDERER_FLOAT: return new FloatRenderer(this, numVoices, Unit.NUM_PARTIALS);
+            default: return null;
+            }
+        }
+
+    // The SpectralRenderer used for voices whose Out module asks for it, built on demand
+    volatile SpectralRenderer spectralRenderer;
+
+    SpectralRenderer getSpectralRenderer()
+        {
+        if (spectralRenderer == null)
+            {
+            synchronized(this)
+                {
+                if (spectralRenderer == null)
+                    spectralRenderer = new SpectralRenderer(this, numVoices);
+                }
+            }
+        return spectralRenderer;
+        }
+
+    // Takes over from buildSample() for voices which are purely harmonic, under RENDERER_HARMONIC
+    HarmonicRenderer harmonicRenderer;
+    // Takes over from harmonicRenderer for harmonic voices which have stopped changing
+    WavetableRenderer wavetableRenderer;
+
+    // Builds the next skip samples for voice S, using the Renderer if there is one.
+    // Voices whose patch asks to be rendered spectrally get the SpectralRenderer regardless.
+    // Otherwise, under RENDERER_HARMONIC, harmonic voices use the HarmonicRenderer fast path,
+    // or a WavetableRenderer single-cycle table if they've held still for a while.  Whenever
+    // the WavetableRenderer doesn't render the voice, its table for it is invalidated, and likewise
+    // whenever a SpectralRenderer doesn't, the frames it was building for it are thrown away.
+    void buildSamples(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        if (with.silent[s])
+            {
+            // Nothing to hear.  We'll catch up when the voice comes back.
+            for (int samp = 0; samp < samples.length; samp++)
+                samples[samp] = 0;
+            silentSamples[s] += samples.length;
+            if (wavetableRenderer != null) wavetableRenderer.invalidate(s);
+            if (spectralRenderer != null) spectralRenderer.invalidate(s);
+            else if (renderer instanceof SpectralRenderer) ((SpectralRenderer)renderer).invalidate(s);
+            return;
+            }
+        else if (silentSamples[s] > 0)
+            {
+            advancePartials(s, currentAmplitudes, silentSamples[s], false);
+            silentSamples[s] = 0;
+            }
+            
+        if (with.spectral[s] && !(renderer instanceof SpectralRenderer))
+            {
+            if (wavetableRenderer != null) wavetableRenderer.invalidate(s);
+            getSpectralRenderer().render(s, currentAmplitudes, samples);
+            }
+        else if (renderer != null)
+            {
+            if (wavetableRenderer != null) wavetableRenderer.invalidate(s);
+            if (spectralRenderer != null) spectralRenderer.invalidate(s);
+            renderer.render(s, currentAmplitudes, samples);
+            }
+        else if (harmonicRenderer != null && harmonicRenderer.canRender(s))
+            {
+            if (spectralRenderer != null) spectralRenderer.invalidate(s);
+            if (wavetableRenderer != null && wavetableRenderer.canRender(s, currentAmplitudes))
+                wavetableRenderer.render(s, currentAmplitudes, samples);
+            else
+                harmonicRenderer.render(s, currentAmplitudes, samples);
+            }
+        else
+            {
+            if (wavetableRenderer != null) wavetableRenderer.invalidate(s);
+            if (spectralRenderer != null) spectralRenderer.invalidate(s);
+            if (interpolation == INTERPOLATION_LINEAR)
+                {
+                buildRamps(s, currentAmplitudes, samples.length);
+                for (int samp = 0; samp < samples.length; samp++)
+                    {
+                    samples[samp] = buildSampleLinear(s, samp) * DEFAULT_VOLUME_MULTIPLIER;
+                    }
+                }
+            else
+                {
+                for (int samp = 0; samp < samples.length; samp++)
+                    {
+                    samples[samp] = buildSample(s, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
+                    }
+                }
+            advancePartials(s, currentAmplitudes, samples.length, true);
+            }
+        }
+
+    // Called by the primary voice thread only.  For each voice, by order, how many
+    // more samples a partial stays on the audible list.
+    int[][] tails;
+    // The tick as of the last time go() called buildAudible()
+    int lastAudibleTick;
+
+    // Called by the output threads only.  For each voice, how many samples it has been
+    // silent, and so not rendered.
+    long[] silentSamples;
+
+    // Returns the index of the first partial in FREQ which is above Nyquist at PITCH, or
+    // freq.length if there is none.  Frequencies are always sorted, so we can binary search.
+    static int nyquistCutoff(double[] freq, double pitch)
+        {
+        int lo = 0;
+        int hi = freq.length;
+        while (lo < hi)
+            {
+            int mid = (lo + hi) >>> 1;
+            if (freq[mid] * pitch > NYQUIST) hi = mid;
+            else lo = mid + 1;
+            }
+        return lo;
+        }
+
+    // Called by the primary voice thread from go() to fill out the Nyquist cutoff, audible list,
+    // and silent flag for voice S in SWAP.  A partial is audible if it is under Nyquist and its
+    // amplitude has been above MINIMUM_VOLUME sometime in the last AUDIBLE_TAIL samples or so.
+    // ELAPSED is how many samples the Output Thread has emitted since the last call: since frames
+    // may be dropped or repeated (see TripleBuffer), we can't assume it's exactly skip.  No more than 
+    // the first MAX_PARTIALS partials are ever audible; the Governor lowers this when we can't keep up.
+    void buildAudible(Swap swap, int s, int elapsed, int maxPartials)
+        {
+        double[] amp = swap.amplitudes[s];
+        byte[] orders = swap.orders[s];
+        int cutoff = Math.min(nyquistCutoff(swap.frequencies[s], swap.pitches[s]), maxPartials);
+        swap.cutoffs[s] = cutoff;
+        int[] audible = swap.audible[s];
+        int[] tail = tails[s];
+
+        int n = 0;
+        for (int i = 0; i < amp.length; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            if (amp[i] > MINIMUM_VOLUME) tail[oi] = AUDIBLE_TAIL;
+            if (i < cutoff && tail[oi] > 0)
+                {
+                // Tails only run out below Nyquist: a dephased partial above Nyquist doesn't decay
+                // at all in buildSample(), and may need its tail when the pitch comes back down.
+                audible[n++] = i;
+                if (amp[i] <= MINIMUM_VOLUME) tail[oi] -= elapsed;
+                }
+            }
+        swap.numAudible[s] = n;
+        swap.silent[s] = (n == 0);
+        }
+
+    // Brings the current amplitudes and positions of voice S forward by SAMPLES samples
+    // in closed form, just as buildSample() would have if it had been visiting them all along.
+    // If SKIP_AUDIBLE, then partials on the audible list are left alone, since buildSample() has
+    // already visited them.  Dephased partials only move when audible, so we only touch their amplitudes,
+    // and buildSample() doesn't touch dephased partials above Nyquist at all, so neither do we.
+    void advancePartials(int s, double[][] currentAmplitudes, long samples, boolean skipAudible)
+        {
+        Swap _with = with;
+        double[] amp = _with.amplitudes[s];
+        double[] freq = _with.frequencies[s];
+        byte[] orders = _with.orders[s];
+        double[] pos = positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double tr = _with.pitches[s] * INV_SAMPLING_RATE;
+        boolean dephase = _with.dephase[s];
+        int[] audible = _with.audible[s];
+        int numAudible = (skipAudible ? _with.numAudible[s] : 0);
+        double decay = Math.pow(ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA, samples);
+        double advance = tr * samples;
+
+        int n = (dephase ? _with.cutoffs[s] : pos.length);
+        int j = 0;
+        for (int i = 0; i < n; i++)
+            {
+            if (j < numAudible && audible[j] == i) { j++; continue; }
+
+            int oi = orders[i] & 0xFF;
+            double amplitude = amp[i] + (currentAmp[oi] - amp[i]) * decay;
+            if (amplitude < WELL_ABOVE_SUBNORMALS) amplitude = 0;
+            currentAmp[oi] = amplitude;
+            if (!dephase)
+                {
+                double position = pos[oi] + freq[i] * advance;
+                pos[oi] = position - (long) position;
+                }
+            }
+        }
+
     volatile boolean clipped = false;
     // Obviously this is not atomic, but it's not a big deal as we're just
     // using it in the GUI to display possible clips, so if we drop a clip by wild
@@ -680,43 +1132,86 @@ public class Output
     // chance it's not a big deal.
     public boolean getAndResetGlitched() { boolean val = glitched; glitched = false; return val; }
 
+    // Lowers the quality when we can't keep up, if load shedding is turned on
+    Governor governor;
+    
+    /** Returns the Governor, or null if load shedding is turned off. */
+    public Governor getGovernor() { return governor; }
 
+    // The ring buffer between the Sound Output thread and the Audio Device thread, if any
+    AudioRing ring;
+    // The current fill target of the ring, in bytes.  Set by the Audio Device thread.
+    volatile int fillTargetBytes;
+    int bytesPerMillisecond;
 
+    /** Returns the current fill target of the render-ahead ring buffer in milliseconds, or 0 if there is none. */
+    public double getFillTarget() { return (ring == null ? 0 : fillTargetBytes / (double) bytesPerMillisecond); }
 
-    // Locks for negotiating between the primary output thread and the per-output threads
-    // These are managed via blockOutputUntil() and signalOutput()
-    Object[] outputLocks;
-    boolean[] lightweightOutputSemaphores;
-        
-
-    //// When the semaphore is FALSE, the per-output thread is in charge of its Sound.
-    //// When the semaphore is TRUE, the primary output thread is in charge.
-    ////
-    //// The primary output thread signals TRUE, then blocks until FALSE.
-    //// The reverse is true for the per-output threads.
-    
-    void blockOutputUntil(int output, boolean val)
+    // Starts the Audio Device thread, which drains the ring into the audio device.  Called from the Sound Output thread.
+    void startDeviceThread()
         {
-        synchronized(outputLocks[output])
+        final boolean stereo = Output.isStereo();
+        final int frameSize = (stereo ? 4 : 2);
+        bytesPerMillisecond = (int)(SAMPLING_RATE / 1000) * frameSize;
+        final int step = FILL_TARGET_STEP * bytesPerMillisecond;
+        final int minTarget = fillTarget * bytesPerMillisecond;
+        final int maxTarget = minTarget * FILL_TARGET_MAX_MULTIPLE;
+        fillTargetBytes = minTarget;
+        ring = new AudioRing(maxTarget + audioBuffer.length * 2);
+
+        Thread thread = new Thread(new Runnable()
             {
-            while(lightweightOutputSemaphores[output] != val)
+            public void run()
                 {
-                try { outputLocks[output].wait(); } catch (Exception e) { }
-                }
-            }
-        }
+                byte[] chunk = new byte[audioBuffer.length];
+                long blockNanos = (long)(skip * 1.0e9 / SAMPLING_RATE);
+                long lastChange = System.nanoTime();
+                int target = minTarget;
                 
-    void signalOutput(int output, boolean val)
-        {
-        synchronized(outputLocks[output])
-            {
-            lightweightOutputSemaphores[output] = val;
-            outputLocks[output].notify();
-            }
+                while(true)
+                    {
+                    long now = System.nanoTime();
+                    int available = sdl.available();
+                    if (available >= ((bufferSize - 128) * (stereo ? 2 : 1)))
+                        {
+                        glitched = true;
+                        if (target < maxTarget)
+                            {
+                            target = Math.min(target + step, maxTarget);
+                            lastChange = now;
+                            }
+                        }
+                    else if (target > minTarget && now - lastChange > FILL_TARGET_RELAX_SECONDS * 1000000000L)
+                        {
+                        target = Math.max(target - step, minTarget);
+                        lastChange = now;
+                        }
+                    fillTargetBytes = target;
+                    
+                    int len = ring.read(chunk, chunk.length, blockNanos);
+                    if (len > 0)
+                        sdl.write(chunk, 0, len);
+                    }
+                }
+            });
+        
+        thread.setName("Audio Device");
+        thread.setDaemon(true);
+        thread.start();
         }
 
 
 
+
+    // Barrier between the primary output thread and the per-output threads.
+    // The primary output thread releases it once per block, then waits until
+    // every per-output thread has arrived.
+    Barrier outputBarrier;
+    // Or, if we're work stealing, the scheduler which runs buildSamples(...)
+    Scheduler outputScheduler;
+
+
+
     double samples[][] = new double[0][skip];
 
     // Starts the output thread.  Called from the constructor.
@@ -730,24 +1225,36 @@ public class Output
                 /// Note that these are indexed by ORDER, not by actual index position
                 final double[][] currentAmplitudes = new double[numVoices][Unit.NUM_PARTIALS];
   
-                lightweightOutputSemaphores = new boolean[numVoices];
-                outputLocks = new Object[numVoices];
-                for (int i = 0; i < numVoices; i++) 
+                if (scheduler == SCHEDULER_WORK_STEALING)
                     {
-                    outputLocks[i] = new Object[0];
-                    lightweightOutputSemaphores[i] = true;
+                    outputScheduler = new Scheduler("Output", Scheduler.DEFAULT_NUM_THREADS, numVoices)
+                        {
+                        public void perform(int voice)
+                            {
+                            if (voice < samples.length)             // voice hasn't been loaded yet, hang tight
+                                {
+                                buildSamples(voice, currentAmplitudes, samples[voice]);
+                                }
+                            }
+                        };
+                    }
+                else
+                    {
+                    outputBarrier = new Barrier((numVoices + numOutputsPerThread - 1) / numOutputsPerThread);
                     }
 
-                for(int i = 0; i < numVoices; i += numOutputsPerThread)
+                for(int i = 0; i < numVoices && outputScheduler == null; i += numOutputsPerThread)
                     {
                     final int _i = i;
+                    final int index = i / numOutputsPerThread;
                     Thread thread = new Thread(new Runnable()
                         {
                         public void run()
                             {
+                            int generation = 0;
                             while(true) 
                                 {
-                                blockOutputUntil(_i, true); 
+                                generation = outputBarrier.awaitRelease(index, generation);
                                 
                                 int n = numVoices;
                                 if (n >  _i + numOutputsPerThread)
@@ -757,33 +1264,38 @@ public class Output
                                     {
                                     if (j < samples.length)         // voice hasn't been loaded yet, hang tight
                                         {
-                                        double[] samplessnd = samples[j];
-                                        for (int samp = 0; samp < skip; samp++)
-                                            {
-                                            samplessnd[samp] = buildSample(j, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
-                                            }
+                                        buildSamples(j, currentAmplitudes, samples[j]);
                                         }
                                     }
                                                         
-                                signalOutput(_i, false);
+                                outputBarrier.arrive();
                                 }
                             }
                         });
                     thread.setName("Output " + _i);
                     thread.setDaemon(true);
+                    outputBarrier.add(thread);
                     thread.start();
                     }
             
                 boolean stereo = Output.isStereo();
+                
+                if (fillTarget > 0)
+                    {
+                    startDeviceThread();
+                    }
                                 
                 while(true)
                     {
                     int solo = -1;
                     
-                    int available = sdl.available();
-                    if (available >= ((bufferSize - 128) * (stereo ? 2 : 1)))
+                    if (ring == null)
                         {
-                        glitched = true;
+                        int available = sdl.available();
+                        if (available >= ((bufferSize - 128) * (stereo ? 2 : 1)))
+                            {
+                            glitched = true;
+                            }
                         }
                         
                     if (samples.length != numSounds)
@@ -791,7 +1303,8 @@ public class Output
                         samples = new double[numSounds][skip];
                         }
 
-                    checkAndSwap();
+                    long blockStart = System.nanoTime();
+                    startBlock();
                     
                     if (onlyPlayFirstSound)
                         {
@@ -801,22 +1314,19 @@ public class Output
                         else
                             solo = sound.getIndex();
                                                         
-                        double[] samplessnd = samples[solo];
-                        for (int samp = 0; samp < skip; samp++)
-                            {
-                            samplessnd[samp] = buildSample(solo, currentAmplitudes) * DEFAULT_VOLUME_MULTIPLIER;
-                            }
+                        buildSamples(solo, currentAmplitudes, samples[solo]);
                         }
                     else
                         {
                         // Fire up output threads
-                        for(int snd = 0; snd < numSounds; snd += numOutputsPerThread)
+                        if (outputScheduler != null)
                             {
-                            signalOutput(snd, true);
+                            outputScheduler.run(numSounds);
                             }
-                        for(int snd = 0; snd < numSounds; snd += numOutputsPerThread)
+                        else
                             {
-                            blockOutputUntil(snd, false);
+                            outputBarrier.release();
+                            outputBarrier.awaitArrivals();
                             }
                         }
                         
@@ -938,7 +1448,13 @@ public class Output
                         tick++;                                 /// See documentation elsewhere about threadsafe nature of tick
                         }
                     
-                    sdl.write(audioBuffer, 0, audioBuffer.length);
+                    if (governor != null)
+                        governor.update(System.nanoTime() - blockStart);
+
+                    if (ring != null)
+                        ring.write(audioBuffer, audioBuffer.length, fillTargetBytes);
+                    else
+                        sdl.write(audioBuffer, 0, audioBuffer.length);
                     }
                 }
             });
@@ -955,13 +1471,7 @@ public class Output
         {
         // build the sound threads
         soundThreadsStarted = true;
-        lightweightSemaphores = new boolean[numThreads];
-        voiceLocks = new Object[numThreads];
-        for (int i = 0; i < numThreads; i++) 
-            {
-            voiceLocks[i] = new Object[0];
-            lightweightSemaphores[i] = true;
-            }
+        voiceBarrier = new Barrier(numThreads);
                                                 
         for (int i = 0; i < numThreads; i++)
             {
@@ -973,10 +1483,11 @@ public class Output
                     long lastTick = -1;
                     int tickCount = 0;
                     double tickAvg = 0;
+                    int generation = 0;
                                                 
                     while(true) 
                         {
-                        blockVoiceUntil(_i, true); 
+                        generation = voiceBarrier.awaitRelease(_i, generation);
                         for (int j = 0; j < numVoicesPerThread; j++)
                             {
                             int voice = _i * numVoicesPerThread + j;
@@ -984,15 +1495,17 @@ public class Output
                                 break;
                             else
                                 {
-                                sounds[voice].go(); 
+                                if (sounds[voice].isDue(adaptiveControlRate))
+                                    sounds[voice].go();
                                 }
                             }
-                        signalVoice(_i, false);
+                        voiceBarrier.arrive();
                         }
                     }
                 });
             thread.setName("Voice " + _i);
             thread.setDaemon(true);
+            voiceBarrier.add(thread);
             thread.start();
             }       
         }
@@ -1026,32 +1539,6 @@ public class Output
         }
         
         
-    //// When the semaphore is FALSE, the per-voice thread is in charge of its Sound.
-    //// When the semaphore is TRUE, the primary voice thread is in charge.
-    ////
-    //// The primary voice thread signals TRUE, then blocks until FALSE.
-    //// The reverse is true for the per-voice threads.
-    
-    void blockVoiceUntil(int thread, boolean val)
-        {
-        synchronized(voiceLocks[thread])
-            {
-            while(lightweightSemaphores[thread] != val)
-                {
-                try { voiceLocks[thread].wait(); } catch (Exception e) { }
-                }
-            }
-        }
-                
-    void signalVoice(int thread, boolean val)
-        {
-        synchronized(voiceLocks[thread])
-            {
-            lightweightSemaphores[thread] = val;
-            voiceLocks[thread].notify();
-            }
-        }
-
 	volatile int count = 0;
 
     double[] zeroAmplitudes = new double[Unit.NUM_PARTIALS];
@@ -1059,6 +1546,37 @@ public class Output
     byte[] standardOrders = new byte[Unit.NUM_PARTIALS];
     
     long ttick = 0;
+
+    // The first of the sounds in each group, or -1
+    int[] groupLeaders = new int[MAX_GROUPS];
+
+    // Makes the first of the NS sounds in each group its leader, and has it run the Modulations which come out 
+    // the same in every Sound in the group, so the others can just copy them (see Plan).  Called under the lock.
+    void shareVoiceInvariants(int ns)
+        {
+        int[] leaders = groupLeaders;
+        for(int g = 0; g < leaders.length; g++)
+            leaders[g] = -1;
+        for(int i = 0; i < ns; i++)
+            {
+            Sound sound = sounds[i];
+            int g = sound.getGroup();
+            if (g < 0 || g >= leaders.length)
+                {
+                sound.setLeader(null);
+                }
+            else if (leaders[g] == -1)
+                {
+                leaders[g] = i;
+                sound.setLeader(null);
+                sound.goShared();
+                }
+            else
+                {
+                sound.setLeader(sounds[leaders[g]]);
+                }
+            }
+        }
     
     /** Called to pulse the Output.  This will cause the Output to wait until the user is no longer
         modifying modules via the GUI, then have all the Sounds produce new partials by calling
@@ -1071,7 +1589,11 @@ public class Output
         int ns = numSounds;
         if (onlyPlayFirstSound) ns = 1;
 
-		syncTick();
+        if (controlClock == CONTROL_CLOCK_FIXED_RATE)
+            awaitControlBlock();
+        else
+            syncTick();
+        long controlStart = System.nanoTime();
 		input.go();
 
         lock();
@@ -1082,36 +1604,44 @@ public class Output
                     {
                     sounds[i].reset();
                     }
+
+            shareVoiceInvariants(ns);
                 
-            if (ns <= numVoicesPerThread)
+            if (scheduler == SCHEDULER_WORK_STEALING && ns > 1)
+                {
+                if (voiceScheduler == null)
+                    {
+                    voiceScheduler = new Scheduler("Voice", Scheduler.DEFAULT_NUM_THREADS, numVoices)
+                        {
+                        public void perform(int voice)
+                            {
+                            if (sounds[voice].isDue(adaptiveControlRate))
+                                sounds[voice].go();
+                            }
+                        };
+                    }
+                voiceScheduler.run(ns);
+                soundThreadsStarted = true;
+                }
+            else if (ns <= numVoicesPerThread || scheduler == SCHEDULER_WORK_STEALING)
                 {                
                 for (int i = 0; i < ns; i++)
                     {
-                    sounds[i].go();
+                    if (sounds[i].isDue(adaptiveControlRate))
+                        sounds[i].go();
                     }
                 soundThreadsStarted = true;
                 }
             else
                 {
                 int numThreads = (int)(Math.ceil(ns / (double)numVoicesPerThread));
-                if (!soundThreadsStarted)
+                if (voiceBarrier == null)
                     {
                     startPerVoiceThreads(numThreads);
-
-                    for (int i = 0; i < numThreads; i++)
-                        {
-                        blockVoiceUntil(i, false);
-                        }
                     }
 
-                for (int i = 0; i < numThreads; i++)
-                    {
-                    signalVoice(i, true);
-                    }
-                for (int i = 0; i < numThreads; i++)
-                    {
-                    blockVoiceUntil(i, false);
-                    }
+                voiceBarrier.release();
+                voiceBarrier.awaitArrivals();
                 }
             }
         finally 
@@ -1119,13 +1649,15 @@ public class Output
             unlock();
             }
 
-        // Spin-wait.  It's both faster and more efficient than a mutex in this case, but it eats up cycles
-        while(emitsReady)
-            {
-            Thread.currentThread().yield();
-            }
-                
-       lock();
+        int now = syncTick;
+        int elapsed = now - lastAudibleTick;
+        lastAudibleTick = now;
+        Swap swap = partials.getWritable();
+        int level = (governor == null ? Governor.LEVEL_FULL : governor.getLevel());
+        int maxPartials = (level >= Governor.LEVEL_FEWER_PARTIALS ? 
+            (int)(Unit.NUM_PARTIALS * Governor.REDUCED_PARTIALS_FRACTION) : Unit.NUM_PARTIALS);
+
+        lock();
         try
             {
             Unit e = sounds[0].getEmits();
@@ -1134,10 +1666,17 @@ public class Output
                 Unit emits = sounds[i].getEmits();
                 if (emits != null)
                     {
-                    System.arraycopy(emits.amplitudes[0], 0, swap.amplitudes[i], 0, emits.amplitudes[0].length); 
+                    PartialBuffer emitted = emits.getPartials(0);
+                    System.arraycopy(emitted.amplitudes, 0, swap.amplitudes[i], 0, emitted.amplitudes.length); 
                     undenormalize(swap.amplitudes[i]);
-                    System.arraycopy(emits.frequencies[0], 0, swap.frequencies[i], 0, emits.frequencies[0].length);
-                    System.arraycopy(emits.orders[0], 0, swap.orders[i], 0, emits.orders[0].length);
+                    sounds[i].updateIdle(isSilent(swap.amplitudes[i]));
+                    System.arraycopy(emitted.frequencies, 0, swap.frequencies[i], 0, emitted.frequencies.length);
+                    System.arraycopy(emitted.orders, 0, swap.orders[i], 0, emitted.orders.length);
+                    if (adaptiveControlRate)
+                        {
+                        sounds[i].updateControlRate(swap.amplitudes[i], swap.frequencies[i]);
+                        rampControl(sounds[i], i, swap.amplitudes[i], swap.orders[i]);
+                        }
                     }
                 else
                     {
@@ -1156,6 +1695,7 @@ public class Output
                     {
                     Out _out = (Out)emits;
                     swap.dephase[i] = _out.getDephase();
+                    swap.spectral[i] = _out.getSpectral();
                     swap.pan[i] = _out.getPan();
                     }
                 else
@@ -1163,11 +1703,34 @@ public class Output
                     System.err.println("Output.go() WARNING, emits isn't an Out!");
                     }
                 }
+
+            if (masking)
+                {
+                int culled = 0;
+                for (int i = 0 ; i < ns; i++)
+                    {
+                    int cutoff = Math.min(nyquistCutoff(swap.frequencies[i], swap.pitches[i]), maxPartials);
+                    culled += masker.cull(swap.amplitudes[i], swap.frequencies[i], swap.pitches[i], cutoff);
+                    }
+                maskedPartials = culled;
+                totalMaskedPartials += culled;
+                }
+
+            if (partialBudget > 0)
+                allocatePartialBudget(swap, ns, maxPartials);
+
+            if (level >= Governor.LEVEL_CULL_VOICES)
+                cullQuietVoices(swap, ns, maxPartials);
+                
+            for (int i = 0 ; i < ns; i++)
+                {
+                buildAudible(swap, i, elapsed, maxPartials);
+                }
                 
             if (e instanceof Out)       // we're only doing this for ONE sound, namely sounds[0]
                 {
                 Out out = (Out)e;
-                swap.reverbWet = (float)(out.modulate(out.MOD_REVERB_WET));
+                swap.reverbWet = (level >= Governor.LEVEL_NO_REVERB ? 0.0f : (float)(out.modulate(out.MOD_REVERB_WET)));
                 swap.reverbDamp = (float)(out.modulate(out.MOD_REVERB_DAMP));
                 swap.reverbRoomSize = (float)(out.modulate(out.MOD_REVERB_ROOM_SIZE));
                 }
@@ -1177,7 +1740,209 @@ public class Output
             unlock();
             }
         
-        emitsReady = true;
+        // Hand the partials over.  We never wait for the Output Thread to pick up the last ones: if it
+        // hasn't, the triple buffer just replaces them and counts them as missed.  What paces us is the
+        // control clock: under a fixed rate, awaitControlBlock() at the start of the next go(); when free 
+        // running, awaitNextBlock().  If the Governor has coarsened control, we sit out a block as well.
+        partials.publish();
+        boolean coarse = false;
+        if (governor != null)
+            {
+            governor.updateControl(System.nanoTime() - controlStart);
+            coarse = (governor.getControlLevel() == Governor.LEVEL_COARSE_CONTROL);
+            }
+        if (controlClock == CONTROL_CLOCK_FIXED_RATE)
+            {
+            controlBlock++;
+            if (coarse) controlBlock++;             // the next partials are for the block after next
+            }
+        else
+            {
+            awaitNextBlock();
+            if (coarse) awaitNextBlock();
+            }
+        }
+
+    // Under CONTROL_CLOCK_FREE_RUNNING, blocksStarted as of the end of the last go()
+    int lastBlockStarted = 0;
+    // The primary voice thread while it's in awaitNextBlock(), so the Output Thread can wake it
+    volatile Thread blockWaiter = null;
+
+    // Called at the end of go() under CONTROL_CLOCK_FREE_RUNNING.  Parks until the Output Thread has started
+    // another block since the last go(), so we build partials exactly as often as it emits them, by the sound
+    // card's clock rather than our own.  If it has already started one or more, we don't wait, nor try to catch
+    // up.  If it hasn't started one by the time the audio buffer would have drained, it's stalled, so we go anyway.
+    void awaitNextBlock()
+        {
+        long deadline = System.nanoTime() + (long)(bufferSize * 1.0e9 / SAMPLING_RATE);
+        blockWaiter = Thread.currentThread();
+        long remaining;
+        while(blocksStarted == lastBlockStarted && (remaining = deadline - System.nanoTime()) > 0)
+            java.util.concurrent.locks.LockSupport.parkNanos(remaining);
+        blockWaiter = null;
+        lastBlockStarted = blocksStarted;
+        }
+
+    // Called by go() for each voice when adaptive control rate is on.  A Sound which is only updated every N blocks
+    // would otherwise hold its partials for N blocks and then jump, and the renderers' per-sample smoothing is only
+    // meant to cover one.  So whenever Sound S is updated, we ramp its target amplitudes linearly, block by block, from 
+    // wherever they were to the new ones, arriving just as the next update is due.  AMP holds the new ones on entry,
+    // and this block's step of the ramp on return.  If the partials' ORDERS have changed, we jump straight there, since 
+    // the ramp would blend different partials together.  A Sound updated every block arrives at once, just as before.
+    void rampControl(Sound sound, int s, double[] amp, byte[] orders)
+        {
+        double[] from = controlFrom[s];
+        double[] current = controlCurrent[s];
+        byte[] lastOrders = controlOrders[s];
+        if (sound.wasUpdated())
+            {
+            System.arraycopy(current, 0, from, 0, from.length);
+            controlStep[s] = 0;
+            controlSteps[s] = sound.getBlocksUntilDue();
+            for(int i = 0; i < orders.length; i++)
+                {
+                if (orders[i] != lastOrders[i])
+                    {
+                    controlSteps[s] = 1;
+                    System.arraycopy(orders, 0, lastOrders, 0, orders.length);
+                    break;
+                    }
+                }
+            }
+        int step = ++controlStep[s];
+        int steps = controlSteps[s];
+        if (step < steps)
+            {
+            double alpha = step / (double) steps;
+            for(int i = 0; i < amp.length; i++)
+                amp[i] = from[i] + (amp[i] - from[i]) * alpha;
+            }
+        System.arraycopy(amp, 0, current, 0, amp.length);
+        }
+
+    // Per-voice state for rampControl(), touched only by the primary voice thread: the target amplitudes the ramp
+    // started from, those it has reached so far, the orders they're in, and how far along the ramp we are, out of how many blocks
+    double[][] controlFrom;
+    double[][] controlCurrent;
+    byte[][] controlOrders;
+    int[] controlStep;
+    int[] controlSteps;
+
+    // Returns true if every amplitude in AMP is at or below MINIMUM_VOLUME
+    static boolean isSilent(double[] amp)
+        {
+        for(int i = 0; i < amp.length; i++)
+            if (amp[i] > MINIMUM_VOLUME) return false;
+        return true;
+        }
+
+    // Called by go() when the Governor is culling voices.  Zeroes the target amplitudes in SWAP of every voice
+    // among the first NS whose partials which would otherwise be rendered (that is, under Nyquist and the first
+    // MAX_PARTIALS) add up to less than Governor.CULL_RATIO of those of the loudest voice.  The voice then fades 
+    // out just as if it had dropped its partials, and fades back in when it's no longer culled.
+    void cullQuietVoices(Swap swap, int ns, int maxPartials)
+        {
+        double[] loudness = this.loudness;
+        double max = 0;
+        for(int s = 0; s < ns; s++)
+            {
+            double[] amp = swap.amplitudes[s];
+            int cutoff = Math.min(nyquistCutoff(swap.frequencies[s], swap.pitches[s]), maxPartials);
+            double sum = 0;
+            for(int i = 0; i < cutoff; i++)
+                sum += amp[i];
+            sum *= swap.velocities[s];
+            loudness[s] = sum;
+            if (sum > max) max = sum;
+            }
+        double threshold = max * Governor.CULL_RATIO;
+        for(int s = 0; s < ns; s++)
+            {
+            if (loudness[s] < threshold)
+                Arrays.fill(swap.amplitudes[s], 0);
+            }
+        }
+    
+    double[] loudness = new double[MAX_VOICES];
+
+    // Culls masked partials in go(), if masking is turned on
+    Masking masker = new Masking();
+    volatile int maskedPartials;
+    volatile long totalMaskedPartials;
+
+    /** Returns how many partials, across all voices, were culled as masked in the most recent block. */
+    public int getMaskedPartials() { return maskedPartials; }
+
+    /** Returns how many partials have been culled as masked so far, summed over every block. */
+    public long getTotalMaskedPartials() { return totalMaskedPartials; }
+
+    // Called by go() when there's a partial budget.  Zeroes the target amplitudes in SWAP of all but the 
+    // loudest partialBudget partials which would otherwise be rendered (that is, under Nyquist and the first
+    // MAX_PARTIALS) across the first NS voices.  Loudness is amplitude times the voice's velocity.
+    void allocatePartialBudget(Swap swap, int ns, int maxPartials)
+        {
+        double[] candidates = budgetCandidates;
+        int n = 0;
+        for(int s = 0; s < ns; s++)
+            {
+            double[] amp = swap.amplitudes[s];
+            double velocity = swap.velocities[s];
+            int cutoff = Math.min(nyquistCutoff(swap.frequencies[s], swap.pitches[s]), maxPartials);
+            for(int i = 0; i < cutoff; i++)
+                {
+                if (amp[i] > MINIMUM_VOLUME)
+                    candidates[n++] = amp[i] * velocity;
+                }
+            }
+        if (n <= partialBudget) return;
+
+        // The budget'th loudest.  Everyone louder stays, and enough of those equal to it to fill out the budget.
+        double threshold = select(candidates, n, n - partialBudget);
+        int ties = partialBudget;
+        for(int j = 0; j < n; j++)
+            if (candidates[j] > threshold) ties--;
+
+        for(int s = 0; s < ns; s++)
+            {
+            double[] amp = swap.amplitudes[s];
+            double velocity = swap.velocities[s];
+            int cutoff = Math.min(nyquistCutoff(swap.frequencies[s], swap.pitches[s]), maxPartials);
+            for(int i = 0; i < cutoff; i++)
+                {
+                double loud = amp[i] * velocity;
+                if (loud < threshold || (loud == threshold && ties-- <= 0))
+                    amp[i] = 0;
+                }
+            }
+        }
+
+    double[] budgetCandidates = new double[MAX_VOICES * Unit.NUM_PARTIALS];
+
+    // Rearranges the first N elements of VALS so that the Kth smallest (from 0) is at K, and returns it.
+    static double select(double[] vals, int n, int k)
+        {
+        int lo = 0;
+        int hi = n - 1;
+        while(lo < hi)
+            {
+            double pivot = vals[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while(i <= j)
+                {
+                while(vals[i] < pivot) i++;
+                while(vals[j] > pivot) j--;
+                if (i <= j)
+                    {
+                    double t = vals[i]; vals[i] = vals[j]; vals[j] = t;
+                    i++; j--;
+                    }
+                }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
+            }
+        return vals[k];
         }  
 
 
@@ -0,0 +1,243 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.*;
+
+/**
+   The partials presented by one Unit output port: an array each of amplitudes, frequencies, and
+   orders, all the same length (see Unit for what these mean).
+
+   <p>A port can present its partials in one of two ways.  It can PUSH an input's arrays, presenting the
+   very same arrays the input does, which costs nothing but makes them read-only.  Or it can COPY them
+   into arrays of its own, which it may then write into.  Each kind of array is pushed or copied on its own,
+   so a port may, for example, write its own amplitudes while pushing its input's frequencies.  The
+   buffer keeps track of which arrays are its own, so before writing into an array which might
+   have been pushed, you can claim it, which copies it into one of ours if it isn't already.
+
+   <p>Each buffer owns up to two arrays of each kind.  We need two so that we always have one which isn't
+   the array we're copying from, even if that array is ours (as happens with feedback).  The second is
+   only built the first time that happens.  Either way, pushing, copying, and claiming partials allocate
+   nothing once the buffer has settled.
+
+   <p>A buffer which is one of a Unit's output ports is attached to the Unit's arrays of all its ports'
+   arrays (see Unit.getAllAmplitudes() and so on), and keeps its own entry in them pointing at whatever
+   it presents, so the Unit needn't build them anew each time it's asked.
+*/
+
+public class PartialBuffer
+    {
+    // The arrays we present
+    double[] amplitudes;
+    double[] frequencies;
+    byte[] orders;
+
+    // The arrays which belong to us
+    double[][] ownAmplitudes = new double[2][];
+    double[][] ownFrequencies = new double[2][];
+    byte[][] ownOrders = new byte[2][];
+
+    // If we're attached to a Unit, its arrays of all its ports' arrays, and which port we are
+    double[][] allAmplitudes;
+    double[][] allFrequencies;
+    byte[][] allOrders;
+    int port;
+
+    /** Builds a buffer of SIZE partials, all zero. */
+    public PartialBuffer(int size)
+        {
+        amplitudes = ownAmplitudes[0] = new double[size];
+        frequencies = ownFrequencies[0] = new double[size];
+        orders = ownOrders[0] = new byte[size];
+        }
+
+    /** Builds a buffer holding a copy of the partials OTHER presents. */
+    public PartialBuffer(PartialBuffer other)
+        {
+        amplitudes = ownAmplitudes[0] = (double[])(other.amplitudes.clone());
+        frequencies = ownFrequencies[0] = (double[])(other.frequencies.clone());
+        orders = ownOrders[0] = (byte[])(other.orders.clone());
+        }
+
+    /** Attaches us to a Unit as its output port PORT, so that from now on ALLAMPLITUDES[PORT], ALLFREQUENCIES[PORT], 
+        and ALLORDERS[PORT] are always the arrays we present. */
+    public void attach(double[][] allAmplitudes, double[][] allFrequencies, byte[][] allOrders, int port)
+        {
+        this.allAmplitudes = allAmplitudes;
+        this.allFrequencies = allFrequencies;
+        this.allOrders = allOrders;
+        this.port = port;
+        setAmplitudes(amplitudes);
+        setFrequencies(frequencies);
+        setOrders(orders);
+        }
+
+    /** Returns the number of partials. */
+    public int size() { return ownAmplitudes[0].length; }
+
+    /** Returns the amplitudes we present. */
+    public double[] getAmplitudes() { return amplitudes; }
+
+    /** Returns the frequencies we present. */
+    public double[] getFrequencies() { return frequencies; }
+
+    /** Returns the orders we present. */
+    public byte[] getOrders() { return orders; }
+
+    /** Returns true if the amplitudes we present are our own, and so may be written to. */
+    public boolean ownsAmplitudes() { return amplitudes == ownAmplitudes[0] || amplitudes == ownAmplitudes[1]; }
+
+    /** Returns true if the frequencies we present are our own, and so may be written to. */
+    public boolean ownsFrequencies() { return frequencies == ownFrequencies[0] || frequencies == ownFrequencies[1]; }
+
+    /** Returns true if the orders we present are our own, and so may be written to. */
+    public boolean ownsOrders() { return orders == ownOrders[0] || orders == ownOrders[1]; }
+
+    /** Presents the very amplitudes FROM presents.  Ours are then read-only. */
+    public void pushAmplitudes(PartialBuffer from) { setAmplitudes(from.amplitudes); }
+
+    /** Presents the very frequencies FROM presents.  Ours are then read-only. */
+    public void pushFrequencies(PartialBuffer from) { setFrequencies(from.frequencies); }
+
+    /** Presents the very orders FROM presents.  Ours are then read-only. */
+    public void pushOrders(PartialBuffer from) { setOrders(from.orders); }
+
+    /** Presents all the very arrays FROM presents.  Ours are then read-only. */
+    public void push(PartialBuffer from)
+        {
+        setAmplitudes(from.amplitudes);
+        setFrequencies(from.frequencies);
+        setOrders(from.orders);
+        }
+
+    /** Copies the amplitudes FROM presents into our own, which may then be written to. */
+    public void copyAmplitudes(PartialBuffer from)
+        {
+        double[] a = from.amplitudes;
+        if (a == amplitudes || !ownsAmplitudes())
+            setAmplitudes(getOwnAmplitudes(a));
+        System.arraycopy(a, 0, amplitudes, 0, amplitudes.length);
+        }
+
+    /** Copies the frequencies FROM presents into our own, which may then be written to. */
+    public void copyFrequencies(PartialBuffer from)
+        {
+        double[] f = from.frequencies;
+        if (f == frequencies || !ownsFrequencies())
+            setFrequencies(getOwnFrequencies(f));
+        System.arraycopy(f, 0, frequencies, 0, frequencies.length);
+        }
+
+    /** Copies the orders FROM presents into our own, which may then be written to. */
+    public void copyOrders(PartialBuffer from)
+        {
+        byte[] o = from.orders;
+        if (o == orders || !ownsOrders())
+            setOrders(getOwnOrders(o));
+        System.arraycopy(o, 0, orders, 0, orders.length);
+        }
+
+    /** Copies all the partials FROM presents into our own, which may then be written to. */
+    public void copy(PartialBuffer from)
+        {
+        copyAmplitudes(from);
+        copyFrequencies(from);
+        copyOrders(from);
+        }
+
+    /** Makes sure the amplitudes we present are our own, copying them into ours if they're not,
+        so they may then be written to. */
+    public void claimAmplitudes()
+        {
+        if (!ownsAmplitudes())
+            {
+            double[] a = amplitudes;
+            setAmplitudes(getOwnAmplitudes(a));
+            System.arraycopy(a, 0, amplitudes, 0, amplitudes.length);
+            }
+        }
+
+    /** Makes sure the frequencies we present are our own, copying them into ours if they're not,
+        so they may then be written to. */
+    public void claimFrequencies()
+        {
+        if (!ownsFrequencies())
+            {
+            double[] f = frequencies;
+            setFrequencies(getOwnFrequencies(f));
+            System.arraycopy(f, 0, frequencies, 0, frequencies.length);
+            }
+        }
+
+    /** Makes sure the orders we present are our own, copying them into ours if they're not,
+        so they may then be written to. */
+    public void claimOrders()
+        {
+        if (!ownsOrders())
+            {
+            byte[] o = orders;
+            setOrders(getOwnOrders(o));
+            System.arraycopy(o, 0, orders, 0, orders.length);
+            }
+        }
+
+    /** Presents our own first amplitudes, set to zero. */
+    public void clearAmplitudes()
+        {
+        setAmplitudes(ownAmplitudes[0]);
+        Arrays.fill(amplitudes, 0);
+        }
+
+    /** Presents our own first frequencies, leaving whatever is in them. */
+    public void restoreFrequencies()
+        {
+        setFrequencies(ownFrequencies[0]);
+        }
+
+    // Presents A, and points the Unit's entry for us at it if we're attached
+    void setAmplitudes(double[] a)
+        {
+        amplitudes = a;
+        if (allAmplitudes != null) allAmplitudes[port] = a;
+        }
+
+    // Presents F, and points the Unit's entry for us at it if we're attached
+    void setFrequencies(double[] f)
+        {
+        frequencies = f;
+        if (allFrequencies != null) allFrequencies[port] = f;
+        }
+
+    // Presents O, and points the Unit's entry for us at it if we're attached
+    void setOrders(byte[] o)
+        {
+        orders = o;
+        if (allOrders != null) allOrders[port] = o;
+        }
+
+    // Returns one of our own amplitudes arrays which isn't NOT
+    double[] getOwnAmplitudes(double[] not)
+        {
+        if (ownAmplitudes[0] != not) return ownAmplitudes[0];
+        if (ownAmplitudes[1] == null) ownAmplitudes[1] = new double[ownAmplitudes[0].length];
+        return ownAmplitudes[1];
+        }
+
+    // Returns one of our own frequencies arrays which isn't NOT
+    double[] getOwnFrequencies(double[] not)
+        {
+        if (ownFrequencies[0] != not) return ownFrequencies[0];
+        if (ownFrequencies[1] == null) ownFrequencies[1] = new double[ownFrequencies[0].length];
+        return ownFrequencies[1];
+        }
+
+    // Returns one of our own orders arrays which isn't NOT
+    byte[] getOwnOrders(byte[] not)
+        {
+        if (ownOrders[0] != not) return ownOrders[0];
+        if (ownOrders[1] == null) ownOrders[1] = new byte[ownOrders[0].length];
+        return ownOrders[1];
+        }
+    }
@@ -0,0 +1,240 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer which runs each partial as a recursive phasor (a complex-rotation oscillator)
+   rather than as a position looked up in Utility.sinTable.
+
+   <p>Each partial keeps a unit vector (cos theta, sin theta).  Once per block, for each
+   partial, we compute the rotation (cos w, sin w) corresponding to its per-sample phase
+   increment w; every sample thereafter is just a complex multiply, and sin theta is read
+   straight out of the state.  There is no table, so nothing thrashes the cache
+   when many voices index random spots in it, and the phase is exact up to rounding rather
+   than quantized to 1/65536 of a cycle, which keeps harmonic partials properly aligned.
+   Repeated multiplication slowly drifts the vector off the unit circle, so we
+   renormalize it once per block.  Rotations are computed with Math.cos and Math.sin, since
+   any error in them accumulates into the phase sample after sample; but they are only
+   recomputed when a partial's frequency actually changes, which for most patches is rarely.
+
+   <p>Like LaneRenderer, the per-sample loops run over contiguous per-partial arrays gathered
+   once per block, so HotSpot can vectorize them.
+
+   <p>The phasors are the phase state: Output.positions is not kept up to date by this
+   Renderer.  When the positions are reset (see Sound.resetPartialPhases()), this is
+   noticed at the next block and the phasors are reset to zero phase to match.
+*/
+
+public class PhasorRenderer extends Renderer
+    {
+    // Phasor state, indexed by order
+    double[][] real;
+    double[][] imaginary;
+    // The rotation last computed for each partial, indexed by order, and the increment it was computed for
+    double[][] rotationReal;
+    double[][] rotationImaginary;
+    double[][] lastIncrement;
+
+    // Per-block scratch state, indexed by partial
+    double[][] amplitudes;
+    double[][] targets;
+    double[][] re;
+    double[][] im;
+    double[][] cr;
+    double[][] ci;
+    double[][] gains;
+    double[][] mixReal;
+    double[][] mixImaginary;
+    double[][] contributions;
+
+    // cos and sin of Output.MIXING
+    static final double[] MIXING_COS = new double[Output.MIXING.length];
+    static final double[] MIXING_SIN = new double[Output.MIXING.length];
+    static
+        {
+        for(int i = 0; i < Output.MIXING.length; i++)
+            {
+            MIXING_COS[i] = Math.cos(Output.MIXING[i]);
+            MIXING_SIN[i] = Math.sin(Output.MIXING[i]);
+            }
+        }
+
+    // The row of Output.positions we last saw for each voice, so we can tell when it has been reset
+    double[][] lastPositions;
+
+    public PhasorRenderer(Output output, int numVoices, int numPartials)
+        {
+        super(output);
+        real = new double[numVoices][numPartials];
+        imaginary = new double[numVoices][numPartials];
+        rotationReal = new double[numVoices][numPartials];
+        rotationImaginary = new double[numVoices][numPartials];
+        lastIncrement = new double[numVoices][numPartials];
+        amplitudes = new double[numVoices][numPartials];
+        targets = new double[numVoices][numPartials];
+        re = new double[numVoices][numPartials];
+        im = new double[numVoices][numPartials];
+        cr = new double[numVoices][numPartials];
+        ci = new double[numVoices][numPartials];
+        gains = new double[numVoices][numPartials];
+        mixReal = new double[numVoices][numPartials];
+        mixImaginary = new double[numVoices][numPartials];
+        contributions = new double[numVoices][numPartials];
+        lastPositions = new double[numVoices][];
+        for(int s = 0; s < numVoices; s++)
+            {
+            reset(s);
+            lastPositions[s] = output.positions[s];
+            }
+        }
+
+    // Resets all the phasors of voice S to zero phase
+    void reset(int s)
+        {
+        double[] r = real[s];
+        double[] i = imaginary[s];
+        double[] rr = rotationReal[s];
+        double[] ri = rotationImaginary[s];
+        double[] li = lastIncrement[s];
+        for(int oi = 0; oi < r.length; oi++)
+            {
+            r[oi] = 1.0;
+            i[oi] = 0.0;
+            rr[oi] = 1.0;
+            ri[oi] = 0.0;
+            li[oi] = 0.0;
+            }
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double pitch = with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        double scale = with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        boolean dephase = with.dephase[s];
+
+        // Have the positions been reset?  Then so must we be.  Sound.resetPartialPhases() replaces
+        // the whole array, so we just check whether this voice's row is new.
+        double[] pos = output.positions[s];
+        if (pos != lastPositions[s])
+            {
+            reset(s);
+            lastPositions[s] = pos;
+            }
+
+        double[] real = this.real[s];
+        double[] imaginary = this.imaginary[s];
+        double[] rotationReal = this.rotationReal[s];
+        double[] rotationImaginary = this.rotationImaginary[s];
+        double[] lastIncrement = this.lastIncrement[s];
+        double[] a = amplitudes[s];
+        double[] t = targets[s];
+        double[] re = this.re[s];
+        double[] im = this.im[s];
+        double[] cr = this.cr[s];
+        double[] ci = this.ci[s];
+        double[] g = gains[s];
+        double[] mr = mixReal[s];
+        double[] mi = mixImaginary[s];
+        double[] c = contributions[s];
+
+        // See buildSample() for why dephase stops at Nyquist
+        int cutoff = with.cutoffs[s];
+        int n = (dephase ? cutoff : real.length);
+
+        // Gather, renormalizing the phasors and updating rotations as we go.
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            double v = currentAmp[oi];
+            a[i] = (v < Output.WELL_ABOVE_SUBNORMALS ? 0.0 : v);            // see LaneRenderer
+            t[i] = amp[i];
+
+            double inc = freq[i] * tr;
+            if (inc != lastIncrement[oi])
+                {
+                lastIncrement[oi] = inc;
+                rotationReal[oi] = Math.cos(inc * Output.PI2);
+                rotationImaginary[oi] = Math.sin(inc * Output.PI2);
+                }
+            cr[i] = rotationReal[oi];
+            ci[i] = rotationImaginary[oi];
+
+            // We're always very close to the unit circle, so one Newton step of 1/sqrt(m)
+            // around m = 1, that is, (3 - m) / 2, is plenty.
+            double r = real[oi];
+            double m = imaginary[oi];
+            double norm = (3.0 - (r * r + m * m)) * 0.5;
+            re[i] = r * norm;
+            im[i] = m * norm;
+
+            g[i] = (i < cutoff ? 1.0 : 0.0);
+            mr[i] = (dephase ? MIXING_COS[oi] : 1.0);
+            mi[i] = (dephase ? MIXING_SIN[oi] : 0.0);
+            }
+
+        final double alpha = Output.PARTIALS_INTERPOLATION_ALPHA;
+        final double oneMinusAlpha = Output.ONE_MINUS_PARTIALS_INTERPOLATION_ALPHA;
+        final double minimum = Output.MINIMUM_VOLUME;
+
+        for(int samp = 0; samp < samples.length; samp++)
+            {
+            if (dephase)
+                {
+                // Only audible partials move, just like buildSample().  sin(theta + mix) is
+                // sin theta cos mix + cos theta sin mix.
+                for(int i = 0; i < n; i++)
+                    {
+                    double v = a[i] * oneMinusAlpha + t[i] * alpha;
+                    a[i] = v;
+                    double r = re[i];
+                    double m = im[i];
+                    if (v > minimum)
+                        {
+                        double r2 = r * cr[i] - m * ci[i];
+                        m = r * ci[i] + m * cr[i];
+                        r = r2;
+                        re[i] = r;
+                        im[i] = m;
+                        }
+                    c[i] = v * (m * mr[i] + r * mi[i]);
+                    }
+                }
+            else
+                {
+                for(int i = 0; i < n; i++)
+                    {
+                    double v = a[i] * oneMinusAlpha + t[i] * alpha;
+                    a[i] = v;
+                    double r = re[i];
+                    double m = im[i];
+                    re[i] = r * cr[i] - m * ci[i];
+                    m = r * ci[i] + m * cr[i];
+                    im[i] = m;
+                    c[i] = v * g[i] * m;
+                    }
+                }
+
+            double sum = 0;
+            for(int i = 0; i < n; i++)
+                sum += c[i];
+            samples[samp] = sum * scale;
+            }
+
+        // Scatter
+        for(int i = 0; i < n; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            currentAmp[oi] = a[i];
+            real[oi] = re[i];
+            imaginary[oi] = im[i];
+            }
+        }
+    }
@@ -0,0 +1,378 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.*;
+
+/**
+   A compiled version of a Sound's patch, which the Sound runs once per block in place of
+   calling go() on each of its registered Modulations in turn.  The Sound builds a new
+   Plan whenever its patch changes (that is, whenever it is woken: see Sound.wake()).  If only
+   the values of its Constants change, it keeps the Plan, and just refolds it (see Sound.refold()).
+
+   <p>Compiling does four things:
+
+   <ol>
+   <li>Dead modules are dropped.  Only Modulations which something reaches, backwards through
+   its modulation inputs, unit inputs, and constraint input, starting from the Sound's emitting
+   Unit (its Out) or from a Modulation which hasSideEffects(), are kept.  Nobody could hear the others.
+   If the Sound has no emitting Unit, nothing is dropped.
+
+   <li>The remaining Modulations are put in dependency order, so that each one runs after
+   everything plugged into it and sees this block's values rather than last block's.  Ties, and
+   cycles (feedback loops), are broken by registration order, which is how they ran before.
+
+   <li>Constant subgraphs are folded.  A Modulation which dependsOnlyOnInputs(), and whose inputs are
+   all Constants (or Nil, or other folded Modulations), produces the same outputs every block.
+   So it runs on the first block after compiling, and is then left out.  A chain of Maps, Scales
+   and the like over Constants thus costs nothing after the first block.
+
+   <li>Voice-invariant subgraphs are shared.  A Modulation which isVoiceInvariant() (a free-running LFO, say,
+   or a Map of one), and whose inputs are all Constants, Nil, folded, or shared themselves, comes out the same in
+   every Sound.  So Output has only the first Sound in each group run its shared Modulations, via goShared(),
+   before any of the Sounds are run; the others just copy their outputs from the first Sound's (see
+   Modulation.copyOutputs(...)), and only when they've changed.
+   </ol>
+
+   <p>What's left is a flat array of Modulations, so running a block is a tight loop with no
+   list accesses, and the per-Modulation isIncremental() checks are already made.
+*/
+
+public class Plan
+    {
+    // Everything live, in dependency order, and for each whether it is incremental, folded (run on 
+    // the first block only), or shared, and its index among the Sound's registered Modulations
+    Modulation[] mods;
+    boolean[] incremental;
+    boolean[] folded;
+    boolean[] shared;
+    int[] index;
+    // Our shared Modulations by registered index, or null
+    Modulation[] sharedByIndex;
+    // For each shared Modulation, the change version of the leader's copy when we last copied from it,
+    // and whether we have copied it at all yet
+    int[] copiedVersions;
+    boolean[] copied;
+    boolean fresh = true;
+    boolean sharedDone = false;
+
+    int numDead;
+    int numFolded;
+    int numShared;
+    boolean countsBlocks;
+
+    /** Compiles a plan for the given ELEMENTS, in registration order, emitting to EMITS (which may be null). */
+    public Plan(List<Modulation> elements, Unit emits)
+        {
+        int n = elements.size();
+        Modulation[] mods = elements.toArray(new Modulation[n]);
+        IdentityHashMap<Modulation, Integer> indexes = new IdentityHashMap<Modulation, Integer>();
+        for(int i = 0; i < n; i++)
+            indexes.put(mods[i], i);
+
+        // Gather the dependencies of each Modulation, as indexes into mods
+        int[][] deps = new int[n][];
+        for(int i = 0; i < n; i++)
+            deps[i] = getDependencies(mods[i], indexes);
+
+        // Mark the live ones
+        boolean[] live = new boolean[n];
+        Integer root = (emits == null ? null : indexes.get(emits));
+        if (root == null)
+            {
+            Arrays.fill(live, true);
+            }
+        else
+            {
+            int[] stack = new int[n];
+            int top = 0;
+            for(int i = 0; i < n; i++)
+                {
+                if (i == root || mods[i].hasSideEffects())
+                    {
+                    live[i] = true;
+                    stack[top++] = i;
+                    }
+                }
+            while(top > 0)
+                {
+                int[] d = deps[stack[--top]];
+                for(int j = 0; j < d.length; j++)
+                    {
+                    if (!live[d[j]])
+                        {
+                        live[d[j]] = true;
+                        stack[top++] = d[j];
+                        }
+                    }
+                }
+            }
+
+        // Order them.  Each time we take the earliest-registered live Modulation whose dependencies
+        // have all been taken, or if there is none (we're in a cycle), the earliest-registered one left.
+        int[] order = new int[n];
+        int numLive = 0;
+        boolean[] placed = new boolean[n];
+        for(int i = 0; i < n; i++)
+            if (!live[i]) placed[i] = true;
+            else numLive++;
+        numDead = n - numLive;
+
+        for(int k = 0; k < numLive; k++)
+            {
+            int next = -1;
+            int fallback = -1;
+            for(int i = 0; i < n && next == -1; i++)
+                {
+                if (placed[i]) continue;
+                if (fallback == -1) fallback = i;
+                boolean ready = true;
+                int[] d = deps[i];
+                for(int j = 0; j < d.length; j++)
+                    {
+                    if (!placed[d[j]] && d[j] != i)
+                        {
+                        ready = false;
+                        break;
+                        }
+                    }
+                if (ready) next = i;
+                }
+            if (next == -1) next = fallback;
+            placed[next] = true;
+            order[k] = next;
+            }
+
+        // Fold the constant ones.  Since we're going in dependency order, anything a Modulation
+        // depends on has already been considered, except around cycles, which never fold.  We don't
+        // fold anything plugged into a Modulation with side effects, since it might be fiddling with it
+        // (Choice changes its target's options, for example).
+        boolean[] pinned = new boolean[n];
+        for(int i = 0; i < n; i++)
+            {
+            if (mods[i].hasSideEffects())
+                for(int j = 0; j < deps[i].length; j++)
+                    pinned[deps[i][j]] = true;
+            }
+        boolean[] folded = new boolean[n];
+        for(int k = 0; k < numLive; k++)
+            {
+            int i = order[k];
+            folded[i] = !pinned[i] && isFoldable(mods[i], indexes, folded);
+            if (folded[i]) numFolded++;
+            }
+
+        // Share the voice-invariant ones, likewise in dependency order
+        boolean[] shared = new boolean[n];
+        for(int k = 0; k < numLive; k++)
+            {
+            int i = order[k];
+            shared[i] = !pinned[i] && !folded[i] && isShareable(mods[i], deps[i], indexes, folded, shared);
+            if (shared[i]) numShared++;
+            }
+
+        this.mods = new Modulation[numLive];
+        this.incremental = new boolean[numLive];
+        this.folded = new boolean[numLive];
+        this.shared = new boolean[numLive];
+        this.index = new int[numLive];
+        sharedByIndex = new Modulation[n];
+        copiedVersions = new int[numLive];
+        copied = new boolean[numLive];
+        for(int k = 0; k < numLive; k++)
+            {
+            int i = order[k];
+            this.mods[k] = mods[i];
+            this.incremental[k] = mods[i].isIncremental();
+            this.folded[k] = folded[i];
+            this.shared[k] = shared[i];
+            this.index[k] = i;
+            if (shared[i]) sharedByIndex[i] = mods[i];
+            if (mods[i].countsBlocks()) countsBlocks = true;
+            }
+        }
+
+    /** Has the folded Modulations run again on the next block, as they did on the first, because the values
+        of the Constants plugged into them have changed.  Which Modulations fold doesn't depend on those values. */
+    public void refold() { fresh = true; }
+
+    /** Returns how many Modulations were dropped because nothing could hear them. */
+    public int getNumDead() { return numDead; }
+
+    /** Returns how many Modulations run only on the first block because their outputs never change. */
+    public int getNumFolded() { return numFolded; }
+
+    /** Returns how many Modulations are shared with the other Sounds in the group. */
+    public int getNumShared() { return numShared; }
+
+    /** Returns true if anything live countsBlocks(). */
+    public boolean countsBlocks() { return countsBlocks; }
+
+    /** Runs one block of the shared Modulations, along with anything folded they depend on if this is the
+        first block.  Called on the first Sound in the group, before go() is called on any of them. */
+    public void goShared()
+        {
+        Modulation[] mods = this.mods;
+        boolean first = fresh;
+        for(int k = 0; k < mods.length; k++)
+            {
+            if (!shared[k] && !(first && folded[k]))
+                continue;
+            Modulation mod = mods[k];
+            if (incremental[k] && !mod.inputsChanged() && !first && !mod.isAnyOutputTriggered())
+                continue;
+            mod.go();
+            }
+        sharedDone = true;
+        }
+
+    /** Runs one block of the plan.  If FORCE is true, every Modulation runs even if it is incremental and
+        nothing plugged into it has changed.  LEADER is the Plan of the first Sound in the group, from which
+        we copy the outputs of our shared Modulations, or null if we are the first Sound. */
+    public void go(boolean force, Plan leader)
+        {
+        Modulation[] mods = this.mods;
+        boolean first = fresh;
+        if (first) force = true;
+        fresh = false;
+        // If we're the leader and goShared() has already run our shared Modulations this block, skip them
+        boolean skipShared = sharedDone && leader == null;
+        sharedDone = false;
+
+        for(int k = 0; k < mods.length; k++)
+            {
+            Modulation mod = mods[k];
+            // A trigger set on the last run stays set until go() resets it, so we can't skip anything holding one
+            boolean triggered = mod.isAnyOutputTriggered();
+            if (folded[k] && !first && !triggered)
+                continue;
+            if (shared[k])
+                {
+                if (skipShared)
+                    continue;
+                Modulation from = (leader == null ? null : leader.getShared(index[k]));
+                // The leader might be partway through a different patch, so make sure it's the same sort of thing
+                if (from != null && from.getClass() == mod.getClass())
+                    {
+                    int v = from.getChangeVersion();
+                    if (!copied[k] || copiedVersions[k] != v)
+                        {
+                        mod.copyOutputs(from, !copied[k]);
+                        copied[k] = true;
+                        copiedVersions[k] = v;
+                        }
+                    continue;
+                    }
+                }
+            // Always call inputsChanged() on incremental ones, even when forced, so they record their inputs
+            if (incremental[k] && !mod.inputsChanged() && !force && !triggered)
+                continue;
+            mod.go();
+            }
+        }
+
+    // Returns our shared Modulation registered at INDEX, or null
+    Modulation getShared(int index)
+        {
+        return (index < sharedByIndex.length ? sharedByIndex[index] : null);
+        }
+
+    // Returns the indexes of the Modulations plugged into MOD.  Constants, Nils, and anything not registered
+    // with the Sound aren't Modulations it will run, so we leave them out.
+    static int[] getDependencies(Modulation mod, IdentityHashMap<Modulation, Integer> indexes)
+        {
+        ArrayList<Modulation> in = new ArrayList<Modulation>();
+        for(int i = 0; i < mod.modulations.length; i++)
+            in.add(mod.modulations[i]);
+        if (mod instanceof Unit)
+            {
+            Unit unit = (Unit) mod;
+            for(int i = 0; i < unit.inputs.length; i++)
+                in.add(unit.inputs[i]);
+            in.add(unit.constraintIn);
+            }
+
+        int[] d = new int[in.size()];
+        int count = 0;
+        for(int i = 0; i < d.length; i++)
+            {
+            Integer index = indexes.get(in.get(i));
+            if (index != null)
+                d[count++] = index;
+            }
+        return Arrays.copyOf(d, count);
+        }
+
+    // Returns true if MOD's outputs can never change until the patch does
+    static boolean isFoldable(Modulation mod, IdentityHashMap<Modulation, Integer> indexes, boolean[] folded)
+        {
+        if (!mod.dependsOnlyOnInputs() || mod.hasSideEffects())
+            return false;
+        for(int i = 0; i < mod.modulations.length; i++)
+            {
+            if (!isFixed(mod.modulations[i], indexes, folded))
+                return false;
+            }
+        if (mod instanceof Unit)
+            {
+            Unit unit = (Unit) mod;
+            for(int i = 0; i < unit.inputs.length; i++)
+                {
+                if (!isFixed(unit.inputs[i], indexes, folded))
+                    return false;
+                }
+            if (unit.constraintIn != null && !isFixed(unit.constraintIn, indexes, folded))
+                return false;
+            }
+        return true;
+        }
+
+    // Returns true if IN, plugged into something, has outputs which can never change until the patch does
+    static boolean isFixed(Modulation in, IdentityHashMap<Modulation, Integer> indexes, boolean[] folded)
+        {
+        if (in instanceof Constant || in instanceof Nil)
+            return true;
+        Integer index = indexes.get(in);
+        if (index == null)
+            return false;
+        return folded[index];
+        }
+    
+    // Returns true if MOD, with dependencies DEPS, comes out the same in every Sound
+    static boolean isShareable(Modulation mod, int[] deps, IdentityHashMap<Modulation, Integer> indexes, boolean[] folded, boolean[] shared)
+        {
+        if (!mod.isVoiceInvariant() || mod.hasSideEffects())
+            return false;
+        for(int j = 0; j < deps.length; j++)
+            {
+            if (!folded[deps[j]] && !shared[deps[j]])
+                return false;
+            }
+        // Anything plugged in which isn't registered with the Sound at all is a mystery
+        for(int i = 0; i < mod.modulations.length; i++)
+            {
+            if (!isKnown(mod.modulations[i], indexes))
+                return false;
+            }
+        if (mod instanceof Unit)
+            {
+            Unit unit = (Unit) mod;
+            for(int i = 0; i < unit.inputs.length; i++)
+                {
+                if (!isKnown(unit.inputs[i], indexes))
+                    return false;
+                }
+            if (unit.constraintIn != null && !isKnown(unit.constraintIn, indexes))
+                return false;
+            }
+        return true;
+        }
+    
+    // Returns true if IN is a Constant, Nil, or registered with the Sound
+    static boolean isKnown(Modulation in, IdentityHashMap<Modulation, Integer> indexes)
+        {
+        return (in instanceof Constant || in instanceof Nil || indexes.get(in) != null);
+        }
+    }
@@ -192,6 +192,40 @@ public class Prefs {
         return Output.DEFAULT_BUFFER_SIZE;
         }
 
+    public static void setLastPartialBudget(int budget) {
+        setLastX("" + budget, "PartialBudget");
+        }
+
+    public static int getLastPartialBudget() {
+        String s = getLastX("PartialBudget");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_PARTIAL_BUDGET;
+        }
+
+    public static void setLastFillTarget(int fillTarget) {
+        setLastX("" + fillTarget, "FillTarget");
+        }
+
+    public static int getLastFillTarget() {
+        String s = getLastX("FillTarget");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_FILL_TARGET;
+        }
+
     public static void setLastSkip(int skip) 
     	{ 
     	setLastX("" + skip, "Skip"); 
@@ -208,6 +242,74 @@ public class Prefs {
     return Output.DEFAULT_SKIP; 
     }
 
+    public static void setLastRenderer(int renderer) {
+        setLastX("" + renderer, "Renderer");
+        }
+
+    public static int getLastRenderer() {
+        String s = getLastX("Renderer");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0 && r < Output.RENDERER_NAMES.length)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_RENDERER;
+        }
+
+    public static void setLastInterpolation(int interpolation) {
+        setLastX("" + interpolation, "Interpolation");
+        }
+
+    public static int getLastInterpolation() {
+        String s = getLastX("Interpolation");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0 && r < Output.INTERPOLATION_NAMES.length)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_INTERPOLATION;
+        }
+
+    public static void setLastScheduler(int scheduler) {
+        setLastX("" + scheduler, "Scheduler");
+        }
+
+    public static int getLastScheduler() {
+        String s = getLastX("Scheduler");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0 && r < Output.SCHEDULER_NAMES.length)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_SCHEDULER;
+        }
+
+    public static void setLastControlClock(int controlClock) {
+        setLastX("" + controlClock, "ControlClock");
+        }
+
+    public static int getLastControlClock() {
+        String s = getLastX("ControlClock");
+        try {
+            if (s != null) {
+                int r = Integer.parseInt(s);
+                if (r >= 0 && r < Output.CONTROL_CLOCK_NAMES.length)
+                    return r;
+                }
+            } catch (NumberFormatException e) {
+            }
+        return Output.DEFAULT_CONTROL_CLOCK;
+        }
+
     public static void setLastBendOctave(int bendOctave) {
         setLastX("" + bendOctave, "BendOctave");
         }
@@ -463,6 +565,33 @@ public class Prefs {
         return Output.DEFAULT_MASTER_GAIN;
         }
 
+    public static void setLastMasking(boolean val) {
+        setLastX("" + val, "Masking");
+        }
+
+    public static boolean getLastMasking() {
+        String s = getLastX("Masking");
+        return parseBoolean(s, Output.DEFAULT_MASKING);
+        }
+
+    public static void setLastAdaptiveControlRate(boolean val) {
+        setLastX("" + val, "AdaptiveControlRate");
+        }
+
+    public static boolean getLastAdaptiveControlRate() {
+        String s = getLastX("AdaptiveControlRate");
+        return parseBoolean(s, Output.DEFAULT_ADAPTIVE_CONTROL_RATE);
+        }
+
+    public static void setLastLoadShedding(boolean val) {
+        setLastX("" + val, "LoadShedding");
+        }
+
+    public static boolean getLastLoadShedding() {
+        String s = getLastX("LoadShedding");
+        return parseBoolean(s, Output.DEFAULT_LOAD_SHEDDING);
+        }
+
     public static void setLastStereo(boolean val) {
         setLastX("" + val, "Stereo");
         }
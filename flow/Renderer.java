@@ -0,0 +1,34 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer converts the current partials of a single voice into a block of samples.
+   Output owns exactly one Renderer, chosen at startup from the Tuning Parameters
+   (see Prefs.getLastRenderer()).  If no Renderer is chosen, Output falls back on its
+   own sample-by-sample loop, buildSample(...).
+
+   <p>render(...) is called by the subsidiary output threads, potentially for several
+   voices at the same time, so a Renderer must only touch per-voice state for the
+   voice it was handed.  When it is finished, a Renderer must leave
+   the current amplitudes and Output.positions in the same state (to within rounding)
+   as buildSample(...) would have, so that the two remain interchangeable.  (PhasorRenderer,
+   which keeps its phases as phasors rather than positions, is the exception for the latter.)
+*/
+
+public abstract class Renderer
+    {
+    protected Output output;
+
+    public Renderer(Output output)
+        {
+        this.output = output;
+        }
+
+    /** Fills SAMPLES with the next samples.length samples of voice S, already multiplied
+        by the voice velocity and by Output.DEFAULT_VOLUME_MULTIPLIER.  CURRENT_AMPLITUDES
+        holds the interpolated amplitudes of every voice, indexed by order. */
+    public abstract void render(int s, double[][] currentAmplitudes, double[] samples);
+    }
@@ -0,0 +1,128 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   Runs a batch of per-voice tasks across a pool of threads, as Output does once per control
+   block (Sound.go()) and once per render block (Output.buildSamples(...)), when the
+   Work Stealing scheduler is chosen in the Tuning Parameters.
+
+   <p>Rather than giving each thread a fixed slice of the voices, every thread, including the
+   one which called run(...), repeatedly takes the next task off a shared list until the list
+   is empty, so a thread which finishes its task early simply steals another one rather than
+   sitting idle while a heavier voice holds up the block.  The list is sorted by how long each
+   task took recently, heaviest first, so that the expensive voices get started right away and
+   the cheap ones fill in the gaps at the end.  With a few dozen tasks a single shared atomic
+   cursor is all the stealing we need.
+
+   <p>Subclasses implement perform(...).  A task is performed by exactly one thread per batch.
+*/
+
+public abstract class Scheduler
+    {
+    /** The default number of threads, including the calling thread: the number of available cores. */
+    public static final int DEFAULT_NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // How quickly the measured costs follow the latest measurement
+    static final double COST_ALPHA = 0.25;
+
+    Barrier barrier;
+    final AtomicInteger next = new AtomicInteger();
+    int numTasks;                               // written by the caller of run(...) before releasing the barrier
+    int[] order;                                // tasks, heaviest first
+    double[] costs;                             // smoothed cost of each task, in nanoseconds
+
+    /** Performs task TASK.  Called from any thread in the pool. */
+    public abstract void perform(int task);
+
+    /** Builds a scheduler for up to MAX_TASKS tasks, running on NUM_THREADS threads including
+        the calling thread, so NUM_THREADS - 1 new threads are started, named NAME followed by a number. */
+    public Scheduler(String name, int numThreads, int maxTasks)
+        {
+        order = new int[maxTasks];
+        costs = new double[maxTasks];
+        for(int i = 0; i < maxTasks; i++)
+            order[i] = i;
+
+        int numWorkers = Math.max(0, numThreads - 1);
+        barrier = new Barrier(numWorkers);
+        for(int i = 0; i < numWorkers; i++)
+            {
+            final int _i = i;
+            Thread thread = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    int generation = 0;
+                    while(true)
+                        {
+                        generation = barrier.awaitRelease(_i, generation);
+                        work();
+                        barrier.arrive();
+                        }
+                    }
+                });
+            thread.setName(name + " " + i);
+            thread.setDaemon(true);
+            barrier.add(thread);
+            thread.start();
+            }
+        }
+
+    /** Performs tasks 0 ... NUM_TASKS - 1, and returns when they are all done. */
+    public void run(int numTasks)
+        {
+        if (numTasks > order.length) numTasks = order.length;
+        sort(numTasks);
+        this.numTasks = numTasks;
+        next.set(0);
+        barrier.release();
+        work();
+        barrier.awaitArrivals();
+        }
+
+    void work()
+        {
+        int n = numTasks;
+        int i;
+        while((i = next.getAndIncrement()) < n)
+            {
+            int task = order[i];
+            long time = System.nanoTime();
+            perform(task);
+            costs[task] += (System.nanoTime() - time - costs[task]) * COST_ALPHA;
+            }
+        }
+
+    // Sorts the first NUM_TASKS slots of order by cost, heaviest first.  The tasks
+    // numbered NUM_TASKS and above may be sitting among them, so we pull those out first.
+    // Costs change slowly, so order is nearly sorted already and insertion sort is cheap.
+    void sort(int numTasks)
+        {
+        int j = 0;
+        for(int i = 0; i < order.length; i++)
+            {
+            if (order[i] < numTasks)
+                order[j++] = order[i];
+            }
+        for(int i = numTasks; i < order.length; i++)
+            order[i] = i;
+
+        for(int i = 1; i < numTasks; i++)
+            {
+            int task = order[i];
+            double cost = costs[task];
+            int k = i - 1;
+            while(k >= 0 && costs[order[k]] < cost)
+                {
+                order[k + 1] = order[k];
+                k--;
+                }
+            order[k + 1] = task;
+            }
+        }
+    }
@@ -33,7 +33,7 @@ public class Sound
     
     int group = Output.PRIMARY_GROUP;
     public int getGroup() { return group; }
-    public void setGroup(int g) { group = g; }
+    public void setGroup(int g) { group = g; wake(); }
     
     // The Sound's output
     Output output;
@@ -67,6 +67,127 @@ public class Sound
     // voice allocation in Input.java 
     volatile int channel = Input.CHANNEL_OMNI;  // we need to assign it *something* initially...
 
+    /** How many blocks in a row a released Sound's partials must all be below Output.MINIMUM_VOLUME before it is parked. */
+    public static final int IDLE_BLOCKS = 256;
+    // Has the Sound been released (or never gated)?
+    volatile boolean released = true;
+    // How many blocks in a row the Sound has been released and silent.  Only touched by the primary voice thread.
+    int idleBlocks = 0;
+    // A parked Sound is idle, and Output doesn't bother calling go() on it.
+    volatile boolean parked = false;
+
+    /** Returns true if the Sound is idle, so Output needn't call go() on it. */
+    public boolean isParked() { return parked; }
+
+    /** Wakes the Sound up if it's parked, restarts its count of idle blocks, and has its patch 
+        recompiled before the next block.  This is called when its patch, group, or parameters change. */
+    public void wake() { unpark(); replan = true; }
+
+    /** Wakes the Sound up if it's parked, restarts its count of idle blocks, and has the folded Modulations
+        in its Plan run again on the next block, without recompiling it.  This is called in place of wake()
+        when only the values of Constants in its patch have changed, which can't change how it compiles. */
+    public void refold() { unpark(); refold = true; }
+
+    // Wakes the Sound up if it's parked, and restarts its count of idle blocks
+    void unpark() { idleBlocks = 0; parked = false; hurry(); }
+
+    /** Called by Output, once per block, with whether the Sound's partials are all silent.  If the Sound
+        has been released and silent for IDLE_BLOCKS blocks in a row, it's parked until woken.  */
+    public void updateIdle(boolean silent)
+        {
+        if (released && silent)
+            {
+            if (++idleBlocks >= IDLE_BLOCKS)
+                parked = true;
+            }
+        else idleBlocks = 0;
+        }
+
+    /** The longest a Sound's control rate may stretch, in blocks, when adaptive control rate is on. */
+    public static final int MAX_CONTROL_INTERVAL = 8;
+    /** How many updates in a row a Sound must be steady before its control interval doubles. */
+    public static final int STEADY_UPDATES = 4;
+    /** How much a partial's amplitude, or (relatively) its frequency, may change between updates while still counting as steady. */
+    public static final double STEADY_THRESHOLD = 1.0e-4;
+    // How many blocks apart go() is presently called.  Only touched by the thread updating this Sound and the primary voice thread.
+    int controlInterval = 1;
+    // How many more blocks until go() is next called
+    int controlCountdown = 0;
+    // How many updates in a row the Sound has been steady
+    int steadyUpdates = 0;
+    // Was go() called this block?
+    boolean updated = false;
+    // The partials at the last update, to compare against
+    double[] lastAmplitudes = new double[Unit.NUM_PARTIALS];
+    double[] lastFrequencies = new double[Unit.NUM_PARTIALS];
+
+    /** Returns true if Output should call go() on the Sound this block, and counts the block.  It's false if
+        the Sound is parked, or if ADAPTIVE and the Sound is steady and not due for an update yet.  Called once per block. */
+    public boolean isDue(boolean adaptive)
+        {
+        if (parked || (adaptive && --controlCountdown > 0))
+            {
+            updated = false;
+            }
+        else
+            {
+            controlCountdown = controlInterval;
+            updated = true;
+            }
+        return updated;
+        }
+
+    // Must every Modulation run next block, even incremental ones whose inputs are unchanged?
+    volatile boolean stale = true;
+
+    /** Has every Modulation run on the next block, even incremental ones whose inputs are unchanged.  */
+    public void markStale() { stale = true; }
+
+    /** Returns true if go() was called this block. */
+    public boolean wasUpdated() { return updated; }
+
+    /** Returns how many blocks from now go() will next be called, if nothing hurries the Sound in the meantime. */
+    public int getBlocksUntilDue() { return Math.max(controlCountdown, 1); }
+
+    /** Puts the Sound back at the full control rate. */
+    public void resetControlRate() { controlInterval = 1; controlCountdown = 0; steadyUpdates = 0; }
+
+    /** Puts the Sound back at the full control rate, and has every Modulation run on the next block.  
+        This is called whenever it receives MIDI or is woken. */
+    public void hurry() { resetControlRate(); markStale(); }
+
+    /** Called by Output, on blocks where go() was called and adaptive control rate is on, with the Sound's
+        new partials.  If they've barely changed since the last update for STEADY_UPDATES updates in a row, 
+        the control interval doubles, up to MAX_CONTROL_INTERVAL blocks.  Any real change drops it right back to 1.
+        The interval never grows if something in the patch countsBlocks().  */
+    public void updateControlRate(double[] amplitudes, double[] frequencies)
+        {
+        if (!updated) return;
+        double[] lastAmplitudes = this.lastAmplitudes;
+        double[] lastFrequencies = this.lastFrequencies;
+        boolean steady = true;
+        for(int i = 0; i < amplitudes.length; i++)
+            {
+            double a = amplitudes[i];
+            double f = frequencies[i];
+            if (steady && (Math.abs(a - lastAmplitudes[i]) > STEADY_THRESHOLD ||
+                    Math.abs(f - lastFrequencies[i]) > STEADY_THRESHOLD * f))
+                steady = false;
+            lastAmplitudes[i] = a;
+            lastFrequencies[i] = f;
+            }
+        
+        if (!steady)
+            {
+            resetControlRate();
+            }
+        else if (++steadyUpdates >= STEADY_UPDATES && controlInterval < MAX_CONTROL_INTERVAL && !plan.countsBlocks())
+            {
+            controlInterval *= 2;
+            steadyUpdates = 0;
+            }
+        }
+
     public Sound(Output output)
         {
         this.output = output;
@@ -89,7 +210,7 @@ public class Sound
     public Output getOutput() { return output; }
 
     /** Adds a Modulation / Unit to the end of the registry. */
-    public void register(Modulation mod) { elements.add(mod); }
+    public void register(Modulation mod) { elements.add(mod); wake(); }
 
     /** Returns the number of Modulations / Units registered with this Sound.
         This does not include Constants.   */
@@ -102,10 +223,10 @@ public class Sound
     public ArrayList<Modulation> getRegistered() { return elements; }
     
     /** Removes a Modulation / Unit */
-    public Modulation removeRegistered(int i) { return elements.remove(i); }
+    public Modulation removeRegistered(int i) { wake(); return elements.remove(i); }
     
     /** Adds a Modulation / Unit at position i*/
-    public void addRegistered(int i, Modulation modulation) { elements.add(i, modulation); }
+    public void addRegistered(int i, Modulation modulation) { elements.add(i, modulation); wake(); }
     
     /** Value returned by findRegistered if it can't find a given Modulation / Unit in its registry */
     public static final int NOT_FOUND = -1;
@@ -120,12 +241,12 @@ public class Sound
         }
         
     /** Sets the Pitch Bend.  The Bend is multiplied against the current note to determine the current pitch. */ 
-    public void setBend(double bend) { this.bend = bend; if (output.getInput().getRespondsToBend()) this.pitch = note * bend; }
+    public void setBend(double bend) { if (bend != this.bend) hurry(); this.bend = bend; if (output.getInput().getRespondsToBend()) this.pitch = note * bend; }
     /** Returns the Pitch Bend.  The Bend is multiplied against the current note to determine the current pitch. */ 
     public double getBend() { return bend; }
      
     /** Sets the velocity (0.0 .. 1.0)*/   
-    public void setVelocity(double velocity) { this.velocity = velocity; }
+    public void setVelocity(double velocity) { if (velocity != this.velocity) hurry(); this.velocity = velocity; }
     /** Returns the velocity (0.0 .. 1.0) */   
     public double getVelocity() { return velocity; }
 
@@ -140,12 +261,12 @@ public class Sound
     public int getMIDINote() { return midiNote; }
         
     /** Sets the Note (in Hz).  The Bend is multiplied against the current note to determine the current pitch.  */   
-    public void setNote(double note) { this.note = note; this.pitch = note * (output.getInput().getRespondsToBend() ? bend : 1); }
+    public void setNote(double note) { if (note != this.note) hurry(); this.note = note; this.pitch = note * (output.getInput().getRespondsToBend() ? bend : 1); }
     /** Returns the Note (in Hz).  The Bend is multiplied against the current note to determine the current pitch.  */   
     public double getNote() { return note; }
     
     /** Sets the Aftertouch (0.0 ... 1.0)*/
-    public void setAftertouch(double val) { aftertouch = val; }
+    public void setAftertouch(double val) { if (val != aftertouch) hurry(); aftertouch = val; }
     /** Returns the Aftertouch (0.0 ... 1.0)*/
     public double getAftertouch() { return aftertouch; }
                 
@@ -153,24 +274,71 @@ public class Sound
     public double getPitch() { return pitch; }
 
     /** Sets the Unit responsible for emitting the final partials. */
-    public void setEmits(Unit unit) { this.emits = unit; }
+    public void setEmits(Unit unit) { this.emits = unit; wake(); }
     /** Returns the Unit responsible for emitting the final partials. */
     public Unit getEmits() { return this.emits; }
     
-    /** Causes all Modulations / Units to have their go() methods called, in order. */
-    public void go()
+    // The compiled patch
+    Plan plan;
+    // Must the patch be recompiled before the next block?
+    volatile boolean replan = true;
+    // Or must just its folded Modulations be run again?
+    volatile boolean refold = false;
+
+    /** Returns the compiled patch, or null if it hasn't been compiled yet. */
+    public Plan getPlan() { return plan; }
+
+    // The first Sound in our group, whose shared Modulations we copy rather than run, or null if we're it
+    Sound leader;
+
+    /** Sets the first Sound in our group, from which we copy the outputs of Modulations which come out the
+        same in every Sound (see Plan), or null if we are the first Sound ourselves.  Called by Output. */
+    public void setLeader(Sound leader) { this.leader = leader; }
+
+    // Recompiles the Plan if the patch has changed, or refolds it if only its Constants have
+    void compile()
         {
-        int len = elements.size();
-        for(int i = 0; i < len; i++)
+        if (replan)
+            {
+            replan = false;
+            refold = false;
+            plan = new Plan(elements, emits);
+            }
+        else if (refold)
             {
-            elements.get(i).go();
+            refold = false;
+            plan.refold();
             }
         }
 
+    /** Causes the Modulations / Units which are the same in every Sound in the group to have their go() 
+        methods called, so the other Sounds can copy them.  Called by Output on the first Sound in the group, 
+        before go() is called on any of them. */
+    public void goShared()
+        {
+        compile();
+        plan.goShared();
+        }
+
+    /** Causes the Modulations / Units to have their go() methods called, in dependency order, recompiling 
+        the Plan first if the patch has changed.  Those which are incremental skip their go() methods if 
+        nothing they depend on has changed, unless the Sound has been marked stale since.  Those which are shared
+        are copied from the leader instead. */
+    public void go()
+        {
+        boolean force = stale;
+        stale = false;
+        compile();
+        Sound l = leader;
+        plan.go(force, l == null ? null : l.plan);
+        }
+
     /** Causes all Modulations / Units to have their gate() methods called, in order.
         gate() informs a Modulation / Unit that the user has pressed the key. */
     public void gate()
         {
+        released = false;
+        unpark();
         int len = elements.size();
         for(int i = 0; i < len; i++)
             elements.get(i).gate();
@@ -180,6 +348,8 @@ public class Sound
         release() informs a Modulation / Unit that the user has released the key. */
     public void release()
         { 
+        released = true;
+        hurry();
         int len = elements.size();
         for(int i = 0; i < len; i++)
             elements.get(i).release();
@@ -188,6 +358,7 @@ public class Sound
     /** Resets all Modulations / Units to their initial positions. */
     public void reset()
         {
+        wake();
         int len = elements.size();
         for(int i = 0; i < len; i++)
             elements.get(i).reset();
@@ -203,6 +374,7 @@ public class Sound
     /** Informs all Modulations / Units that a clock reset, or MIDI CLOCK START, occurred. */
     public void restart()
         {
+        hurry();
         int len = elements.size();
         for(int i = 0; i < len; i++)
             elements.get(i).restart();
@@ -0,0 +1,272 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer which synthesizes partials in the frequency domain with an inverse FFT and
+   overlap-add, rather than as explicit sines.
+
+   <p>Every HOP samples we build one FRAME_SIZE-point spectrum for the voice.  Each partial is
+   placed into it as the main lobe of a 4-term Blackman-Harris window centered on the partial's
+   (fractional) bin, with the partial's amplitude and phase, which is just WINDOW_BINS * 2 + 1
+   complex additions (plus their mirror images at negative frequencies).  A single inverse FFT
+   then yields every partial at once, windowed.  We divide the window back out and instead apply
+   a triangular window, HOP samples to either side of the center of the frame, and overlap-add:
+   the triangles sum to one, and crossfade each partial's amplitude linearly from frame to frame.
+   This is the approach of Rodet and Depalle.  The cost per hop is O(FRAME_SIZE log FRAME_SIZE)
+   for the FFT plus a small constant per partial, rather than HOP sines per partial, so it pays
+   off for large numbers of partials.  Blackman-Harris sidelobes are at about -92dB, so truncating
+   the window to its main lobe costs little accuracy.
+
+   <p>Because a partial's amplitude and frequency are sampled only once per hop, and the
+   output is delayed by HOP samples, this is coarser in time than buildSample():
+   amplitudes glide linearly over HOP samples rather than exponentially, and rapid pitch
+   modulation is smoothed.  Partials closer together than a bin (SAMPLING_RATE / FRAME_SIZE, about
+   86 Hz) are fine: the spectrum is linear, so they simply add.
+
+   <p>Output.positions holds each partial's phase at the center of the most recent frame,
+   and the current amplitudes are set to the targets.  SpectralRenderer may be chosen for all
+   patches in the Tuning Parameters, or per patch with the Out module's Spectral option.
+   Whenever a voice is silent, or rendered some other way, Output calls invalidate(...), and we
+   throw away the frames we were overlapping for it, so that when it comes back we don't mix the
+   end of its old sound into its new one.
+*/
+
+public class SpectralRenderer extends Renderer
+    {
+    /** The size of the FFT. */
+    public static final int FRAME_SIZE = 512;
+    /** The number of new samples produced per FFT. */
+    public static final int HOP = FRAME_SIZE / 4;
+    /** How many bins to either side of a partial's center we place its window. */
+    public static final int WINDOW_BINS = 4;
+    // How finely we tabulate the window's transform, per bin
+    static final int OVERSAMPLE = 256;
+
+    static final double BH0 = 0.35875;
+    static final double BH1 = 0.48829;
+    static final double BH2 = 0.14128;
+    static final double BH3 = 0.01168;
+
+    // The transform of the (zero-phase) window, from 0 to WINDOW_BINS bins out, normalized
+    // so that a partial of amplitude 1 comes out of the inverse FFT with a peak of 1 times the window.
+    static final double[] kernel = new double[WINDOW_BINS * OVERSAMPLE + 2];
+    // Triangle / window, over the middle half of the frame
+    static final double[] synthesis = new double[HOP * 2];
+    // FFT tables
+    static final double[] cosTable = new double[FRAME_SIZE / 2];
+    static final double[] sinTable = new double[FRAME_SIZE / 2];
+    static final int[] bitReverse = new int[FRAME_SIZE];
+
+    static double window(int n)                 // n from -FRAME_SIZE/2 to FRAME_SIZE/2
+        {
+        double x = Output.PI2 * n / FRAME_SIZE;
+        return BH0 + BH1 * Math.cos(x) + BH2 * Math.cos(2 * x) + BH3 * Math.cos(3 * x);
+        }
+
+    static
+        {
+        for(int i = 0; i < kernel.length; i++)
+            {
+            double x = i / (double) OVERSAMPLE;
+            double sum = window(0);
+            for(int n = 1; n < FRAME_SIZE / 2; n++)
+                sum += 2 * window(n) * Math.cos(Output.PI2 * x * n / FRAME_SIZE);
+            // A real sinusoid of amplitude A puts A / 2 in each of its two lobes, and the
+            // inverse FFT below doesn't divide by FRAME_SIZE
+            kernel[i] = sum * 0.5 / FRAME_SIZE;
+            }
+        kernel[kernel.length - 1] = 0;                          // we interpolate up to, but not past, WINDOW_BINS
+
+        for(int j = 0; j < HOP * 2; j++)
+            {
+            int n = j - HOP;                                    // from the center of the frame
+            double triangle = 1.0 - Math.abs(n) / (double) HOP;
+            synthesis[j] = triangle / window(n);
+            }
+
+        for(int i = 0; i < FRAME_SIZE / 2; i++)
+            {
+            cosTable[i] = Math.cos(Output.PI2 * i / FRAME_SIZE);
+            sinTable[i] = Math.sin(Output.PI2 * i / FRAME_SIZE);
+            }
+
+        int bits = Integer.numberOfTrailingZeros(FRAME_SIZE);
+        for(int i = 0; i < FRAME_SIZE; i++)
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+    // Per-voice state.  Each voice is only rendered by one output thread at a time.
+    double[][] real;                // spectrum, then frame
+    double[][] imaginary;
+    double[][] ready;               // finished samples not yet handed out
+    double[][] pending;             // the second half of the previous frame's triangle
+    int[] readPos;                  // next sample in ready
+    boolean[] started;              // have we built a frame since we were last invalidated?
+
+    public SpectralRenderer(Output output, int numVoices)
+        {
+        super(output);
+        real = new double[numVoices][FRAME_SIZE];
+        imaginary = new double[numVoices][FRAME_SIZE];
+        ready = new double[numVoices][HOP];
+        pending = new double[numVoices][HOP];
+        readPos = new int[numVoices];
+        started = new boolean[numVoices];
+        for(int s = 0; s < numVoices; s++)
+            readPos[s] = HOP;
+        }
+
+    /** Called by Output whenever voice S is silent or rendered by anything other than us.  We forget
+        the ready and pending samples of its frames, so its next frame starts afresh from silence. */
+    public void invalidate(int s)
+        {
+        if (!started[s]) return;
+        started[s] = false;
+        readPos[s] = HOP;
+        double[] pending = this.pending[s];
+        for(int j = 0; j < HOP; j++)
+            pending[j] = 0;
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        double[] ready = this.ready[s];
+        int pos = readPos[s];
+        for(int samp = 0; samp < samples.length; samp++)
+            {
+            if (pos == HOP)
+                {
+                buildFrame(s, currentAmplitudes);
+                started[s] = true;
+                pos = 0;
+                }
+            samples[samp] = ready[pos++];
+            }
+        readPos[s] = pos;
+        }
+
+    // Builds the next HOP samples of voice S into ready[s]
+    void buildFrame(int s, double[][] currentAmplitudes)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double pitch = with.pitches[s];
+        double tr = pitch * Output.INV_SAMPLING_RATE;
+        boolean dephase = with.dephase[s];
+        double[] re = real[s];
+        double[] im = imaginary[s];
+
+        for(int k = 0; k < FRAME_SIZE; k++)
+            {
+            re[k] = 0;
+            im[k] = 0;
+            }
+
+        final int mask = FRAME_SIZE - 1;
+        int cutoff = with.cutoffs[s];
+        for(int i = 0; i < pos.length; i++)
+            {
+            double frequency = freq[i];
+            int oi = orders[i] & 0xFF;
+            double amplitude = amp[i];
+            boolean audible = (i < cutoff && amplitude > Output.MINIMUM_VOLUME);
+            if (dephase && i >= cutoff)       // see buildSample()
+                break;
+            currentAmp[oi] = amplitude;
+
+            if (audible)
+                {
+                // The phase at the center of the frame, shifted by -PI/2 so we get sines rather than cosines.
+                // e^(i(theta - PI/2)) = sin theta - i cos theta
+                double theta = pos[oi] * Output.PI2 + (dephase ? Output.MIXING[oi] : 0.0);
+                double cr = Utility.fastIntSin(theta) * amplitude;
+                double ci = -Utility.fastIntCos(theta) * amplitude;
+
+                double bin = frequency * tr * FRAME_SIZE;
+                int first = (int) Math.ceil(bin - WINDOW_BINS);
+                int last = (int) Math.floor(bin + WINDOW_BINS);
+                for(int k = first; k <= last; k++)
+                    {
+                    double x = Math.abs(k - bin) * OVERSAMPLE;
+                    int xi = (int) x;
+                    double alpha = x - xi;
+                    double w = kernel[xi] + (kernel[xi + 1] - kernel[xi]) * alpha;
+                    // shift the frame by half its length so the center lands in the middle: (-1)^k
+                    if ((k & 1) != 0) w = -w;
+                    int k1 = k & mask;
+                    int k2 = (-k) & mask;
+                    re[k1] += cr * w;
+                    im[k1] += ci * w;
+                    re[k2] += cr * w;
+                    im[k2] -= ci * w;
+                    }
+                }
+
+            // On to the center of the next frame.  Dephased partials only move when audible.
+            if (!dephase || audible)
+                {
+                double position = pos[oi] + frequency * tr * HOP;
+                pos[oi] = position - (int) position;
+                }
+            }
+
+        inverseFFT(re, im);
+
+        // Overlap-add the middle half of the frame.  The first HOP samples complete the
+        // previous frame's triangle; the second HOP are held for the next frame.
+        double[] ready = this.ready[s];
+        double[] pending = this.pending[s];
+        double scale = with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        int start = FRAME_SIZE / 2 - HOP;
+        for(int j = 0; j < HOP; j++)
+            {
+            ready[j] = (pending[j] + re[start + j] * synthesis[j]) * scale;
+            pending[j] = re[start + HOP + j] * synthesis[HOP + j];
+            }
+        }
+
+    // In-place inverse complex FFT, without the 1/N.  Only the real part of the result is
+    // meaningful to us, since our spectra are conjugate-symmetric.
+    static void inverseFFT(double[] re, double[] im)
+        {
+        int n = FRAME_SIZE;
+        for(int i = 0; i < n; i++)
+            {
+            int j = bitReverse[i];
+            if (j > i)
+                {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+            }
+
+        for(int size = 2; size <= n; size <<= 1)
+            {
+            int half = size >> 1;
+            int step = n / size;
+            for(int i = 0; i < n; i += size)
+                {
+                for(int j = 0; j < half; j++)
+                    {
+                    double wr = cosTable[j * step];
+                    double wi = sinTable[j * step];
+                    int a = i + j;
+                    int b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                    }
+                }
+            }
+        }
+    }
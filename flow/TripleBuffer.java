@@ -0,0 +1,101 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+import java.util.concurrent.atomic.*;
+
+/**
+   A lock-free triple buffer between one writer thread and one reader thread.  Output uses
+   it to hand each block's partials (an Output.Swap) from the primary voice thread to the
+   Sound Output thread.
+
+   <p>Of the three buffers, one belongs to the writer, one to the reader, and one sits in a
+   shared publish slot.  The writer fills its buffer and calls publish(), which trades it for
+   whatever is in the slot.  The reader calls acquire(), which trades its buffer for the one
+   in the slot if a newer one has been published since it last looked, and otherwise keeps
+   its buffer.  Either way each side only ever touches its own buffer, so the writer never
+   overwrites anything the reader is using, and neither ever waits for the other.  Since the
+   exchanges are atomic, everything the writer wrote into a buffer before publishing
+   it is visible to the reader after acquiring it.
+
+   <p>The slot holds the buffer's index along with a sequence number which the writer bumps on every
+   publish.  From it the reader can tell how many published buffers it never saw (missed:
+   the writer got ahead) and how many times it found nothing new and had to reuse its old buffer
+   (duplicated: the writer fell behind).
+*/
+
+public class TripleBuffer<T>
+    {
+    static final int INDEX_MASK = 3;
+    static final int SEQUENCE_SHIFT = 2;
+    static final int SEQUENCE_MASK = -1 >>> SEQUENCE_SHIFT;
+
+    final Object[] buffers;
+    final AtomicInteger slot;               // (sequence << SEQUENCE_SHIFT) | index
+
+    // Writer-only
+    int back = 1;
+    int sequence = 0;
+
+    // Reader-only
+    int front = 0;
+    int lastTaken = 0;                  // sequence number of the reader's buffer
+
+    // Written only by the reader
+    volatile long missed = 0;
+    volatile long duplicated = 0;
+
+    public TripleBuffer(T a, T b, T c)
+        {
+        buffers = new Object[] { a, b, c };
+        slot = new AtomicInteger(2);
+        }
+
+    /** Returns the writer's buffer, which the writer may fill at will. */
+    @SuppressWarnings("unchecked")
+    public T getWritable() { return (T) buffers[back]; }
+
+    /** Publishes the writer's buffer, and hands the writer a fresh one.  Called by the writer. */
+    public void publish()
+        {
+        sequence = (sequence + 1) & SEQUENCE_MASK;
+        int old = slot.getAndSet((sequence << SEQUENCE_SHIFT) | back);
+        back = old & INDEX_MASK;
+        }
+
+    /** Trades the reader's buffer for the most recently published one, if it hasn't been
+        acquired already, and returns the reader's buffer.  Called by the reader. */
+    @SuppressWarnings("unchecked")
+    public T acquire()
+        {
+        int taken = slot.get();
+        int seq = taken >>> SEQUENCE_SHIFT;
+        int last = lastTaken;
+        if (seq == last)
+            {
+            duplicated++;
+            }
+        else
+            {
+            // Put our old buffer into the slot under the sequence number we're taking, so it
+            // doesn't look new.  If the writer published again in the meantime, try again.
+            while(!slot.compareAndSet(taken, (seq << SEQUENCE_SHIFT) | front))
+                {
+                taken = slot.get();
+                seq = taken >>> SEQUENCE_SHIFT;
+                }
+            missed += ((seq - last - 1) & SEQUENCE_MASK);
+            front = taken & INDEX_MASK;
+            lastTaken = seq;
+            }
+        return (T) buffers[front];
+        }
+
+    /** Returns the number of published buffers the reader never acquired. */
+    public long getMissed() { return missed; }
+
+    /** Returns the number of times acquire() found nothing new and returned the same buffer again. */
+    public long getDuplicated() { return duplicated; }
+    }
@@ -40,6 +40,8 @@ import java.util.*;
    to them.  If you copy amplitudes (or frequencies), then you are free to modify them.
    If you make a direct link, you cannot make any changes -- they are read-only, but this
    is more efficient. Orders are by default transferred by direct link, though you override that.
+   Each output port's partials are held in a PartialBuffer, which keeps track of which of its arrays
+   are direct links and which are its own copies.
         
    <p>Units must always output their partials sorted by frequency.  There are two sorting
    algorithms available to do this.  simpleSort() is a sorting algorithm tuned for situations
@@ -72,14 +74,10 @@ public class Unit extends Modulation
         defineModulationOutputs(new String[] { } );  // no modulation outputs in a Unit by default
         defineOutputs(new String[] { "Out" });
         numOutputs = 1;
-        amplitudes = new double[numOutputs][NUM_PARTIALS];
-        frequencies = new double[numOutputs][NUM_PARTIALS];
-        orders = new byte[numOutputs][NUM_PARTIALS];
         outputNames = new String[] { DEFAULT_UNIT_OUT_NAME };
         constraintIn = Unit.NIL;
         constraint = CONSTRAINT_NONE;
         invertConstraints = false;
-        standardizeFrequencies();
         setOrders();
         }
         
@@ -106,8 +104,11 @@ public class Unit extends Modulation
         super.reset();
         if (clearOnReset)
             {
-            amplitudes = new double[numOutputs][NUM_PARTIALS];
-            frequencies = new double[numOutputs][NUM_PARTIALS];
+            for(int i = 0; i < partials.length; i++)
+                {
+                partials[i].clearAmplitudes();
+                partials[i].restoreFrequencies();
+                }
             standardizeFrequencies();
             }
         }
@@ -135,14 +136,15 @@ public class Unit extends Modulation
         }
              
     /** Called to update the Unit.  Override this as you see fit, but be sure to call super.go().
-        By default this method clears all triggers.   It also pushes orders from input 0, unless 
+        By default this method clears all triggers and bumps the Unit's change version.   It also pushes orders from input 0, unless 
         setPushOrders(false) has been called. */    
     public void go()
         {
         super.go();
+        changeVersion++;
         if (pushOrders && inputs.length > 0)
             {
-            for(int i = 0; i < orders.length; i++)
+            for(int i = 0; i < partials.length; i++)
                 pushOrders(0, i);
             }
         }
@@ -150,19 +152,59 @@ public class Unit extends Modulation
         
         
         
+    // The change versions of our unit inputs, then our constraint input, when we last ran
+    int[] unitVersions = new int[0];
+
+    protected boolean inputsChanged()
+        {
+        boolean changed = super.inputsChanged();
+        Unit[] inputs = this.inputs;
+        int[] seen = unitVersions;
+        if (seen.length != inputs.length + 1)
+            {
+            seen = unitVersions = new int[inputs.length + 1];
+            changed = true;
+            }
+        for(int i = 0; i < inputs.length; i++)
+            {
+            int v = inputs[i].changeVersion;
+            if (seen[i] != v)
+                {
+                seen[i] = v;
+                changed = true;
+                }
+            }
+        int v = (constraintIn == null ? 0 : constraintIn.changeVersion);
+        if (seen[inputs.length] != v)
+            {
+            seen[inputs.length] = v;
+            changed = true;
+            }
+        return changed;
+        }
+
+    /** Copies the partials of OTHER as well as its modulation outputs.  Our output arrays may have been pushed
+        from an input, so we copy into arrays of our own rather than writing into someone else's. */
+    public void copyOutputs(Modulation other, boolean fresh)
+        {
+        super.copyOutputs(other, fresh);
+        Unit unit = (Unit) other;
+        for(int i = 0; i < partials.length; i++)
+            partials[i].copy(unit.partials[i]);
+        changeVersion++;
+        }
+
+
     ////// OUTPUTS
 
     int numOutputs;
-    // The amplitudes of the various partials.
-    double[][] amplitudes;
-    // The frequencies of the various partials.
-    double[][] frequencies;
-    /* The orders of the various partials.  An order is an integer which uniquely represents that
+    /* The partials of each output port: their amplitudes, frequencies, and orders.
+       An order is an integer which uniquely represents that
        partial.  For example, if you had four partials, they might have orders 0, 1, 2, 3, or
        perhaps 1, 3, 2, 0, or whatever, as long as each one is unique and they're ordered 0...n
        somehow.  These are basically unique "names" for your partials.
         
-       <p> The reason for this array is as follows.  Units are required to keep their
+       <p> The reason for orders is as follows.  Units are required to keep their
        partials in sorted order by frequency.  If you have a unit whose partials wander about,
        the sort ordering will change.  This means that certain units (notably Smooth) which
        need to keep track of which partials are which cannot rely on their order in the array
@@ -171,18 +213,52 @@ public class Unit extends Modulation
         
        <p>Note that orders is a byte array.  Thus if you want more than 256 partials you'll have
        to change this to a short array.
+        
+       <p>Each PartialBuffer keeps track of which of the arrays it presents were pushed from an input, 
+       and so are read-only, and which are its own.
     */
-    byte[][] orders;
+    PartialBuffer[] partials;
+    // The arrays each of our output ports presents, kept up to date by the ports themselves
+    double[][] allAmplitudes;
+    double[][] allFrequencies;
+    byte[][] allOrders;
     String[] outputNames;
-    
+
+    /** Returns true if the amplitudes array of Unit Output Port OUTPUT is one of our own, and so may be written to. */
+    public boolean ownsAmplitudes(int output) { return partials[output].ownsAmplitudes(); }
+
+    /** Returns true if the frequencies array of Unit Output Port OUTPUT is one of our own, and so may be written to. */
+    public boolean ownsFrequencies(int output) { return partials[output].ownsFrequencies(); }
+
+    /** Returns true if the orders array of Unit Output Port OUTPUT is one of our own, and so may be written to. */
+    public boolean ownsOrders(int output) { return partials[output].ownsOrders(); }
+
+    /** Makes sure the amplitudes array of Unit Output Port OUTPUT is one of our own, copying it into one if it's not,
+        so it may then be written to. */
+    public void claimAmplitudes(int output) { partials[output].claimAmplitudes(); }
+
+    /** Makes sure the frequencies array of Unit Output Port OUTPUT is one of our own, copying it into one if it's not,
+        so it may then be written to. */
+    public void claimFrequencies(int output) { partials[output].claimFrequencies(); }
+
+    /** Makes sure the orders array of Unit Output Port OUTPUT is one of our own, copying it into one if it's not,
+        so it may then be written to. */
+    public void claimOrders(int output) { partials[output].claimOrders(); }
+
     /** Defines the UNIT OUTPUT ports by their names. */
     public void defineOutputs(String[] names)
         {
         numOutputs = names.length;
         outputNames = names;
-        amplitudes = new double[numOutputs][NUM_PARTIALS];
-        frequencies = new double[numOutputs][NUM_PARTIALS];
-        orders = new byte[numOutputs][NUM_PARTIALS];
+        partials = new PartialBuffer[numOutputs];
+        allAmplitudes = new double[numOutputs][];
+        allFrequencies = new double[numOutputs][];
+        allOrders = new byte[numOutputs][];
+        for(int i = 0; i < numOutputs; i++)
+            {
+            partials[i] = new PartialBuffer(NUM_PARTIALS);
+            partials[i].attach(allAmplitudes, allFrequencies, allOrders, i);
+            }
         standardizeFrequencies();
         }
     
@@ -203,22 +279,25 @@ public class Unit extends Modulation
     public boolean showsOutputs() { return true; }
     
     /** Returns all amplitude arrays for partials of all unit output ports. */
-    public double[][] getAllAmplitudes() { return amplitudes; }
+    public double[][] getAllAmplitudes() { return allAmplitudes; }
 
     /** Returns all frequency arrays for partials of all unit output ports. */
-    public double[][] getAllFrequecies() { return frequencies; }
+    public double[][] getAllFrequecies() { return allFrequencies; }
 
     /** Returns all orders arrays for partials of all unit output ports. */
-    public byte[][] getAllOrders() { return orders; }
+    public byte[][] getAllOrders() { return allOrders; }
+
+    /** Returns the partials of the given unit output port. */
+    public PartialBuffer getPartials(int val) { return partials[val]; }
 
     /** Returns the amplitude array for the partials of the given unit output port. */
-    public double[] getAmplitudes(int val) { return amplitudes[val]; }
+    public double[] getAmplitudes(int val) { return partials[val].amplitudes; }
 
     /** Returns the frequency array for the partials of the given unit output port. */
-    public double[] getFrequencies(int val) { return frequencies[val]; }
+    public double[] getFrequencies(int val) { return partials[val].frequencies; }
  
     /** Returns the orders array for the partials of the given unit output port. */
-    public byte[] getOrders(int val) { return orders[val]; }
+    public byte[] getOrders(int val) { return partials[val].orders; }
     
     /** Override this to provide tooltips for unit outputs.  This array by default is null. 
         If any given String is null or empty, no tooltip is generated for it.  */
@@ -294,6 +373,7 @@ public class Unit extends Modulation
         {
         inputs[num] = in;
         inputIndexes[num] = index;
+        if (sound != null) sound.wake();
         }
                 
     /** Returns the unit attached to Unit Input Port NUM. */
@@ -331,6 +411,7 @@ public class Unit extends Modulation
         {
         inputs[num] = defaultInputs[num];
         inputIndexes[num] = 0;
+        if (sound != null) sound.wake();
         }
                 
     /** Returns the number of unit input ports. */
@@ -339,25 +420,32 @@ public class Unit extends Modulation
         return inputNames.length;
         }
 
+    /** Gets the partials provided by the Unit attached to Unit Input Port INPUT.
+        These should be treated as read-only. */
+    public PartialBuffer getPartialsIn(int input)
+        {
+        return inputs[input].partials[inputIndexes[input]];
+        }
+
     /** Gets the frequencies array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public double[] getFrequenciesIn(int input)
         {
-        return inputs[input].frequencies[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].frequencies;
         }
                 
     /** Gets the amplitudes array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public double[] getAmplitudesIn(int input)
         {
-        return inputs[input].amplitudes[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].amplitudes;
         }
 
     /** Gets the orders array of the partials provided by the Unit attached to Unit Input Port INPUT.
         This array should be treated as read-only. */
     public byte[] getOrdersIn(int input)
         {
-        return inputs[input].orders[inputIndexes[input]];
+        return inputs[input].partials[inputIndexes[input]].orders;
         }
 
     /** Sets the frequencies array of Unit Output Port OUTPUT to 
@@ -365,7 +453,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushFrequencies(int input, int output)
         {
-        frequencies[output] = inputs[input].frequencies[inputIndexes[input]];
+        partials[output].pushFrequencies(inputs[input].partials[inputIndexes[input]]);
         }
                 
     /** Sets the amplitudes array of Unit Output Port OUTPUT to 
@@ -373,7 +461,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushAmplitudes(int input, int output)
         {
-        amplitudes[output] = inputs[input].amplitudes[inputIndexes[input]];
+        partials[output].pushAmplitudes(inputs[input].partials[inputIndexes[input]]);
         }
 
     /** Sets the orders array of Unit Output Port OUTPUT to 
@@ -381,7 +469,7 @@ public class Unit extends Modulation
         The output array should then be treated as read-only. */
     public void pushOrders(int input, int output)
         {
-        orders[output] = inputs[input].orders[inputIndexes[input]];
+        partials[output].pushOrders(inputs[input].partials[inputIndexes[input]]);
         }
                 
     /** Copies the frequencies array of Unit Output Port OUTPUT from 
@@ -389,13 +477,8 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyFrequencies(int input, int output)
         {
-        double[] f1 = inputs[input].frequencies[inputIndexes[input]];
-        double[] f2 = frequencies[output];
-        if (f1 == f2) 
-            frequencies[output] = (double[])(f1.clone());
-        else
-            System.arraycopy(f1, 0, f2, 0, f2.length);
-        //testDenormals(f2,  "" + this);                
+        partials[output].copyFrequencies(inputs[input].partials[inputIndexes[input]]);
+        //testDenormals(getFrequencies(output),  "" + this);                
         }
 
     /** Copies the amplitudes array of Unit Output Port OUTPUT from 
@@ -403,13 +486,8 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyAmplitudes(int input, int output)
         {
-        double[] f1 = inputs[input].amplitudes[inputIndexes[input]];
-        double[] f2 = amplitudes[output];
-        if (f1 == f2) 
-            amplitudes[output] = (double[])(f1.clone());
-        else
-            System.arraycopy(f1, 0, f2, 0, f2.length);
-        //testDenormals(f2, "" + this);         
+        partials[output].copyAmplitudes(inputs[input].partials[inputIndexes[input]]);
+        //testDenormals(getAmplitudes(output), "" + this);         
         }
                 
     /** Copies the orders array of Unit Output Port OUTPUT from 
@@ -417,12 +495,15 @@ public class Unit extends Modulation
         The output array may then be written to. */
     public void copyOrders(int input, int output)
         {
-        byte[] f1 = inputs[input].orders[inputIndexes[input]];
-        byte[] f2 = orders[output];
-        if (f1 == f2) 
-            orders[output] = (byte[])(f1.clone());
-        else
-            System.arraycopy(f1, 0, f2, 0, f2.length);
+        partials[output].copyOrders(inputs[input].partials[inputIndexes[input]]);
+        }
+
+    /** Copies the amplitudes, frequencies, and orders arrays of Unit Output Port OUTPUT from 
+        the partials provided by the Unit attached to Unit Input Port INPUT.
+        The output arrays may then be written to. */
+    public void copyPartials(int input, int output)
+        {
+        partials[output].copy(inputs[input].partials[inputIndexes[input]]);
         }
 
     /** Sets the frequencies array of Unit Output Port #0 to 
@@ -473,6 +554,14 @@ public class Unit extends Modulation
         copyOrders(input, 0);
         }
 
+    /** Copies the amplitudes, frequencies, and orders arrays of Unit Output Port #0 from 
+        the partials provided by the Unit attached to Unit Input Port INPUT.
+        The output arrays may then be written to. */
+    public void copyPartials(int input)
+        {
+        copyPartials(input, 0);
+        }
+
     /** Override this to provide tooltips for unit inputs.  This array by default is null. 
         If any given String is null or empty, no tooltip is generated for it.  */
     public String[] getUnitInputHelp() { return null; }
@@ -484,9 +573,9 @@ public class Unit extends Modulation
     /** Sets the orders of the partials of all unit output ports such that order[i] = i. */
     public void setOrders()
         {
-        for(int j = 0; j < orders.length; j++)
+        for(int j = 0; j < partials.length; j++)
             {
-            byte[] o = orders[j];
+            byte[] o = partials[j].orders;
             for(int i = 0; i < o.length; i++)
                 o[i] = (byte)i;
             }
@@ -496,7 +585,7 @@ public class Unit extends Modulation
         frequency[i] is equal to i + 1.    */    
     public void standardizeFrequencies()
         {
-        for(int i = 0; i < frequencies.length; i++)
+        for(int i = 0; i < partials.length; i++)
             standardizeFrequencies(i);
         }
 
@@ -504,7 +593,7 @@ public class Unit extends Modulation
         frequency[i] is equal to i + 1.    */    
     public void standardizeFrequencies(int j)
         {
-        double[] f = frequencies[j];
+        double[] f = partials[j].frequencies;
         for(int i = 0; i < f.length; i++)
             f[i] = i + 1;
         }
@@ -513,7 +602,7 @@ public class Unit extends Modulation
         so that the largest one is 1.  If the amplitudes are all zero, they are left as zero. */
     public void maximizeAmplitudes()
         {
-        for(int i = 0; i < amplitudes.length; i++)
+        for(int i = 0; i < partials.length; i++)
             maximizeAmplitudes(i);
         }
 
@@ -521,7 +610,7 @@ public class Unit extends Modulation
         so that the largest one is 1.  If the amplitudes are all zero, they are left as zero. */
     public void maximizeAmplitudes(int j)
         {
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         double max = Math.abs(a[j]);
                 
         for(int i = 1; i < a.length; i++)
@@ -546,7 +635,7 @@ public class Unit extends Modulation
         so that they sum to 1.  If the amplitudes are all zero, they are left as zero. */
     public void normalizeAmplitudes()
         {
-        for(int i = 0; i < amplitudes.length; i++)
+        for(int i = 0; i < partials.length; i++)
             normalizeAmplitudes(i);
         }
 
@@ -555,7 +644,7 @@ public class Unit extends Modulation
     public void normalizeAmplitudes(int j)
         {
         double total = 0;
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         for(int i = 0; i < a.length; i++)
             {
             total += Math.abs(a[i]);
@@ -573,7 +662,7 @@ public class Unit extends Modulation
     /** Returns the partial from output unit port J whose frequency is lowest. */
     public int getLowestPartial(int j)
         {
-        double[] f = frequencies[j];
+        double[] f = partials[j].frequencies;
         double minimum = f[0];
         int val = 0;
         for(int i = 1; i < f.length; i++)
@@ -588,7 +677,7 @@ public class Unit extends Modulation
     /** Returns the partial from output unit port J whose amplitude is highest. */
     public int getLoudestPartial(int j)
         {
-        double[] a = amplitudes[j];
+        double[] a = partials[j].amplitudes;
         double maximum = a[0];
         int val = 0;
         for(int i = 1; i < a.length; i++)
@@ -699,20 +788,20 @@ public class Unit extends Modulation
     
         <p>This method is normally called because you believe you have rearranged the partials so that their
         frequencies are out of order.  This also implies that you have already copied the frequencies, so this
-        method doesn't copy them again.  However, orders are always copied.  Amplitudes are
+        method doesn't copy them again.  However, orders are always copied if they aren't already ours (see claimOrders(...)).  Amplitudes are
         only copied if indicated: you should pass in TRUE if you have not already copied the amplitudes, else FALSE.  */
     public boolean bigSort(int j, boolean copyAmplitudes)
         {
         if (copyAmplitudes)
             {
-            this.amplitudes[j] = this.amplitudes[j].clone();
+            claimAmplitudes(j);
             }
 
-        this.orders[j] = this.orders[j].clone();
+        claimOrders(j);
 
-        double[] frequencies = this.frequencies[j];
-        double[] amplitudes = this.amplitudes[j];
-        byte[] orders = this.orders[j];
+        double[] frequencies = partials[j].frequencies;
+        double[] amplitudes = partials[j].amplitudes;
+        byte[] orders = partials[j].orders;
         
         quickSort(frequencies, amplitudes, orders);
         return true;
@@ -734,7 +823,7 @@ public class Unit extends Modulation
         
         <p>This method is normally called because you believe you have rearranged the partials so that their
         frequencies are out of order.  This also implies that you have already copied the frequencies, so this
-        method doesn't copy them again.  However, orders are always copied.  Amplitudes are
+        method doesn't copy them again.  However, orders are always copied if they aren't already ours (see claimOrders(...)).  Amplitudes are
         only copied if indicated: you should pass in TRUE if you have not already copied the amplitudes, else FALSE.  */
     public boolean simpleSort(int j, boolean copyAmplitudes) 
         {
@@ -743,14 +832,14 @@ public class Unit extends Modulation
         
         if (copyAmplitudes)
             {
-            this.amplitudes[j] = this.amplitudes[j].clone();
+            claimAmplitudes(j);
             }
         
-        this.orders[j] = this.orders[j].clone();
+        claimOrders(j);
 
-        double[] frequencies = this.frequencies[j];
-        double[] amplitudes = this.amplitudes[j];
-        byte[] orders = this.orders[j];
+        double[] frequencies = partials[j].frequencies;
+        double[] amplitudes = partials[j].amplitudes;
+        byte[] orders = partials[j].orders;
         
         int start = 0;
         int end = frequencies.length;
@@ -939,19 +1028,19 @@ public class Unit extends Modulation
 
     /** Sets the constraints to the non-zero amplitude harmonics in the Unit attached to the given Unit Input Port whose output port is index.
         Setting to Unit.NIL indicates that the constraints are not based on these harmonics.  */
-    public void setConstraintIn(Unit constraintIn, int index) { this.constraintIn = constraintIn; this.constraintIndex = index; }
+    public void setConstraintIn(Unit constraintIn, int index) { this.constraintIn = constraintIn; this.constraintIndex = index; if (sound != null) sound.wake(); }
     /** Returns the unit defining the constraints, if any, or Unit.NIL. */
     public Unit getConstraintIn() { return constraintIn; }
     /** Returns the output port of the Unit defining the constraints, if any. */
     public int getConstraintIndex() { return constraintIndex; }
     /** Sets the constraints to the given constraint type.  If you have called setConstraintIn(...),
         it takes precedence over these constraints. */
-    public void setConstraint(int constraint) { this.constraint = constraint; }
+    public void setConstraint(int constraint) { this.constraint = constraint; if (sound != null) sound.wake(); }
     /** Returns the constraint type.  If you have called setConstraintIn(...),
         it takes precedence over these constraints. */
     public int getConstraint() { return constraint; }
     /** Inverts the constraints (or not). */
-    public void setInvertConstraints(boolean invertConstraints) { this.invertConstraints = invertConstraints; }
+    public void setInvertConstraints(boolean invertConstraints) { this.invertConstraints = invertConstraints; if (sound != null) sound.wake(); }
     /** Returns whether the constraints are inverted or not. */
     public boolean getInvertConstraints() { return invertConstraints; }
 
@@ -965,7 +1054,7 @@ public class Unit extends Modulation
                 {
                 // costly...
                                 
-                double[] c = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] c = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 int count = 0;
                 for(int i = 0; i < c.length; i++)
                     {
@@ -993,7 +1082,7 @@ public class Unit extends Modulation
                 {
                 // costly...
                                 
-                double[] c = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] c = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 int count = 0;
                 for(int i = 0; i < c.length; i++)
                     {
@@ -1041,7 +1130,7 @@ public class Unit extends Modulation
                 
             if (!(getConstraintIn() instanceof Nil))
                 {
-                double[] constraintAmplitudes = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] constraintAmplitudes = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 for(int i = 0; i < frequencies.length; i++)
                     {
                     if (constraintAmplitudes[i] != 0)
@@ -1073,7 +1162,7 @@ public class Unit extends Modulation
 
             if (!(getConstraintIn() instanceof Nil))
                 {
-                double[] constraintAmplitudes = getConstraintIn().amplitudes[getConstraintIndex()];
+                double[] constraintAmplitudes = getConstraintIn().partials[getConstraintIndex()].amplitudes;
                 for(int i = 0; i < frequencies.length; i++)
                     {
                     if (constraintAmplitudes[i] == 0)
@@ -1254,23 +1343,23 @@ public class Unit extends Modulation
         obj.inputs = (Unit[])(inputs.clone());
         // unit indexes.  We're setting them all to zero because we reset to defaults (which are constants)
         obj.inputIndexes = (int[])(inputIndexes.clone());       
+        // Nothing's been seen yet
+        obj.unitVersions = new int[0];
 
 
         // ---- Copy over unit outputs ----
         // Output Names
         obj.outputNames = (String[])(outputNames.clone());
-        // Amplitudes
-        obj.amplitudes = (double[][])(amplitudes.clone());
-        for(int i = 0; i < obj.amplitudes.length; i++)
-            obj.amplitudes[i] = (double[])(obj.amplitudes[i].clone());
-        // Frequencies
-        obj.frequencies = (double[][])(frequencies.clone());
-        for(int i = 0; i < obj.frequencies.length; i++)
-            obj.frequencies[i] = (double[])(obj.frequencies[i].clone());
-        // Orders
-        obj.orders = (byte[][])(orders.clone());
-        for(int i = 0; i < obj.orders.length; i++)
-            obj.orders[i] = (byte[])(obj.orders[i].clone());
+        // Partials
+        obj.partials = new PartialBuffer[partials.length];
+        obj.allAmplitudes = new double[partials.length][];
+        obj.allFrequencies = new double[partials.length][];
+        obj.allOrders = new byte[partials.length][];
+        for(int i = 0; i < obj.partials.length; i++)
+            {
+            obj.partials[i] = new PartialBuffer(partials[i]);
+            obj.partials[i].attach(obj.allAmplitudes, obj.allFrequencies, obj.allOrders, i);
+            }
 
                 
         // ---- Copy over constraints.  We retain a pointer to the old constraint input if necessary.  So we just copy over the cached info. ----
@@ -0,0 +1,250 @@
+// Copyright 2018 by George Mason University
+// Licensed under the Apache 2.0 License
+
+
+package flow;
+
+/**
+   A Renderer for harmonic voices (see HarmonicRenderer) whose partials have stopped
+   changing: a held organ chord, a static KHarmonics or WaveTable patch, or any sound sitting on
+   its sustain plateau.  For such a voice every cycle is identical, so we build that one cycle
+   into a table with an inverse FFT, and then play the table back, with Catmull-Rom
+   interpolation, following the phase of the fundamental.  This costs the same per sample
+   no matter how many partials there are.
+
+   <p>canRender(...) is called once per block for each harmonic voice.  It keeps track of
+   whether the voice's target amplitudes and orders have stayed within THRESHOLD of what they
+   were, and whether the current amplitudes have caught up with them.  Once a voice has been
+   steady for STEADY_BLOCKS blocks we build its table, and we use it until anything changes
+   by more than THRESHOLD, at which point Output goes back to HarmonicRenderer.  The table
+   only contains those harmonics which were below Nyquist at the voice's pitch when it was
+   built, and is rebuilt whenever a pitch change moves a harmonic across Nyquist, so each
+   voice effectively gets its own mip level and nothing above Nyquist is ever heard.
+
+   <p>Phases are taken from Output.positions when the table is built, and positions and current
+   amplitudes are advanced every block just as buildSample() would have, so that falling
+   back to HarmonicRenderer or buildSample() is seamless.  Going the other way, the table's
+   phases are only good so long as we're the ones advancing the positions, so whenever a voice 
+   is rendered some other way, Output calls invalidate(...), and the voice must be steady
+   for STEADY_BLOCKS blocks all over again before we build it a fresh table.
+*/
+
+public class WavetableRenderer extends Renderer
+    {
+    /** The length of a single-cycle table.  This is 16 samples per cycle of the highest possible harmonic. */
+    public static final int TABLE_LENGTH = 4096;
+    /** How much a target amplitude may change before the table is no longer valid. */
+    public static final double THRESHOLD = 1.0e-4;
+    /** How many blocks a voice must be steady before we bother building a table for it. */
+    public static final int STEADY_BLOCKS = 8;
+
+    static final int TABLE_MASK = TABLE_LENGTH - 1;
+
+    // FFT tables
+    static final double[] cosTable = new double[TABLE_LENGTH / 2];
+    static final double[] sinTable = new double[TABLE_LENGTH / 2];
+    static final int[] bitReverse = new int[TABLE_LENGTH];
+    
+    static
+        {
+        for(int i = 0; i < TABLE_LENGTH / 2; i++)
+            {
+            cosTable[i] = Math.cos(Output.PI2 * i / TABLE_LENGTH);
+            sinTable[i] = Math.sin(Output.PI2 * i / TABLE_LENGTH);
+            }
+
+        int bits = Integer.numberOfTrailingZeros(TABLE_LENGTH);
+        for(int i = 0; i < TABLE_LENGTH; i++)
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+    // Per-voice state.  Each voice is only rendered by one output thread at a time.
+    double[][] tables;              // spectrum (real part), then table
+    double[][] imaginary;           // spectrum (imaginary part), then garbage
+    boolean[] valid;                // is tables[s] good to use?
+    int[] steady;                   // how many blocks in a row has the voice been steady?
+    int[] harmonics;                // how many harmonics are in tables[s] (or would be)?
+    double[][] lastTargets;         // the targets the voice was steady at
+    byte[][] lastOrders;
+    double[][] lastPositions;       // the row of Output.positions the table was built from
+
+    public WavetableRenderer(Output output, int numVoices, int numPartials)
+        {
+        super(output);
+        tables = new double[numVoices][TABLE_LENGTH];
+        imaginary = new double[numVoices][TABLE_LENGTH];
+        valid = new boolean[numVoices];
+        steady = new int[numVoices];
+        harmonics = new int[numVoices];
+        lastTargets = new double[numVoices][numPartials];
+        lastOrders = new byte[numVoices][numPartials];
+        lastPositions = new double[numVoices][];
+        }
+
+    /** Returns true if voice S, which must be harmonic (see HarmonicRenderer.canRender(...)),
+        has been steady long enough to be rendered from a table.  Builds the table if need be.
+        This must be called exactly once per block for each harmonic voice. */
+    public boolean canRender(int s, double[][] currentAmplitudes)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double[] targets = lastTargets[s];
+        byte[] ords = lastOrders[s];
+
+        int audible = with.cutoffs[s];
+
+        boolean same = (audible == harmonics[s] && output.positions[s] == lastPositions[s]);
+        for(int i = 0; i < amp.length && same; i++)
+            {
+            double diff = amp[i] - targets[i];
+            double lag = amp[i] - currentAmp[orders[i] & 0xFF];
+            if (diff > THRESHOLD || diff < -THRESHOLD ||
+                lag > THRESHOLD || lag < -THRESHOLD ||
+                orders[i] != ords[i])
+                same = false;
+            }
+
+        if (!same)
+            {
+            // Start over
+            valid[s] = false;
+            steady[s] = 0;
+            harmonics[s] = audible;
+            lastPositions[s] = output.positions[s];
+            System.arraycopy(amp, 0, targets, 0, amp.length);
+            System.arraycopy(orders, 0, ords, 0, orders.length);
+            return false;
+            }
+
+        if (valid[s]) return true;
+        if (++steady[s] < STEADY_BLOCKS) return false;
+
+        buildTable(s, audible);
+        valid[s] = true;
+        return true;
+        }
+
+    /** Called by Output whenever voice S is rendered by anything other than us, or not rendered at all,
+        since its positions then move on without us and any table we have no longer matches them. */
+    public void invalidate(int s)
+        {
+        valid[s] = false;
+        steady[s] = 0;
+        }
+
+    // Builds the single-cycle table for voice S out of its first AUDIBLE harmonics
+    void buildTable(int s, int audible)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+
+        // Harmonic n is n times the fundamental's phase plus an offset, phi, which we bake
+        // into the table.  Bin n of the spectrum, A e^(i (phi - PI/2)), becomes A sin(2 PI n x / TABLE_LENGTH + phi)
+        // in the real part of the inverse transform, which is all we keep.
+        int max = Math.min(audible, TABLE_LENGTH / 2 - 1);
+        double[] re = tables[s];
+        double[] im = imaginary[s];
+        for(int j = 0; j < TABLE_LENGTH; j++)
+            {
+            re[j] = 0;
+            im[j] = 0;
+            }
+        double fundamental = pos[orders[0] & 0xFF];
+        for(int i = 0; i < max; i++)
+            {
+            double phi = (pos[orders[i] & 0xFF] - (i + 1) * fundamental) * Output.PI2;
+            re[i + 1] = amp[i] * Math.sin(phi);
+            im[i + 1] = -amp[i] * Math.cos(phi);
+            }
+        inverseFFT(re, im);
+        }
+
+    // In-place inverse complex FFT of size TABLE_LENGTH, without the 1/N, as in SpectralRenderer
+    static void inverseFFT(double[] re, double[] im)
+        {
+        int n = TABLE_LENGTH;
+        for(int i = 0; i < n; i++)
+            {
+            int j = bitReverse[i];
+            if (j > i)
+                {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+            }
+
+        for(int size = 2; size <= n; size <<= 1)
+            {
+            int half = size >> 1;
+            int step = n / size;
+            for(int i = 0; i < n; i += size)
+                {
+                for(int j = 0; j < half; j++)
+                    {
+                    double wr = cosTable[j * step];
+                    double wi = sinTable[j * step];
+                    int a = i + j;
+                    int b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                    }
+                }
+            }
+        }
+
+    public void render(int s, double[][] currentAmplitudes, double[] samples)
+        {
+        Output.Swap with = output.with;
+        double[] amp = with.amplitudes[s];
+        double[] freq = with.frequencies[s];
+        byte[] orders = with.orders[s];
+        double[] pos = output.positions[s];
+        double[] currentAmp = currentAmplitudes[s];
+        double tr = with.pitches[s] * Output.INV_SAMPLING_RATE;
+        double scale = with.velocities[s] * Output.DEFAULT_VOLUME_MULTIPLIER;
+        double[] table = tables[s];
+        int len = samples.length;
+
+        double fundamental = pos[orders[0] & 0xFF];
+        double inc = freq[0] * tr;
+        for(int t = 0; t < len; t++)
+            {
+            double x = fundamental + (t + 1) * inc;
+            x = (x - Math.floor(x)) * TABLE_LENGTH;
+            int slot1 = (int) x;
+            double alpha = x - slot1;
+            int slot0 = (slot1 - 1) & TABLE_MASK;
+            int slot2 = (slot1 + 1) & TABLE_MASK;
+            int slot3 = (slot1 + 2) & TABLE_MASK;
+            slot1 = slot1 & TABLE_MASK;
+
+            double f0 = table[slot0];
+            double f1 = table[slot1];
+            double f2 = table[slot2];
+            double f3 = table[slot3];
+            samples[t] = (alpha * alpha * alpha * (-0.5 * f0 + 1.5 * f1 - 1.5 * f2 + 0.5 * f3) +
+                alpha * alpha * (f0 - 2.5 * f1 + 2 * f2 - 0.5 * f3) +
+                alpha * (-0.5 * f0 + 0.5 * f2) +
+                f1) * scale;
+            }
+
+        // Advance everyone to the end of the block, just as buildSample() would.  The current
+        // amplitudes are already within THRESHOLD of their targets, so we just snap them there.
+        for(int i = 0; i < pos.length; i++)
+            {
+            int oi = orders[i] & 0xFF;
+            currentAmp[oi] = amp[i];
+            double position = pos[oi] + freq[i] * tr * len;
+            pos[oi] = position - (int) position;
+            }
+        }
+    }
@@ -421,6 +421,16 @@ public class Display extends JComponent
             g.drawString(text, (float)(getBounds().getWidth() - strbounds.getWidth() - 10), (float)(hh + 1) * 2);
                 
             }
+            
+        // Let the user know if the Governor has lowered the quality
+        Governor governor = output.getGovernor();
+        if (modPanel == null && governor != null && governor.isDegraded())
+            {
+            g.setFont(Style.SMALL_FONT());
+            g.setColor(Color.ORANGE);
+            FontMetrics fm = g.getFontMetrics();
+            g.drawString("overloaded: " + governor.getLevelName(), 10, (float)(fm.getHeight() + 1));
+            }
         }
     
     /** A hook called before getColorForPartial(...) is called many times.
@@ -139,6 +139,7 @@ public class OptionsChooser extends JPanel implements Rebuildable
                             if (s.getGroup() == Output.PRIMARY_GROUP)
                                 {
                                 s.getRegistered(index).setOptionValue(optionNumber, (checkbox.isSelected() ? 1 : 0));
+                                s.wake();
                                 }
                             }
                         }
@@ -200,6 +201,7 @@ public class OptionsChooser extends JPanel implements Rebuildable
                             if (s.getGroup() == Output.PRIMARY_GROUP)
                                 {
                                 s.getRegistered(index).setOptionValue(optionNumber, val);
+                                s.wake();
                                 }
                             }
                         }
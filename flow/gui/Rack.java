@@ -856,17 +856,43 @@ public class Rack extends JPanel
             }
         bufferSizeCombo.setSelectedIndex(index);
 
+        // Partial Budget
+        int[] budgets = new int[] { 0, 256, 512, 1024, 2048, 4096 };
+        String[] s_budgets = new String[] { "Unlimited", "256", "512", "1024", "2048", "4096" };
+        JComboBox budgetCombo = new JComboBox(s_budgets);
+        int pb = Prefs.getLastPartialBudget();
+        index = 0;
+        for(int i = budgets.length - 1; i > 0; i--)
+            {
+            if (budgets[i] <= pb)
+                { index = i; break; }
+            }
+        budgetCombo.setSelectedIndex(index);
+
+        // Render-Ahead Fill Target
+        int[] fillTargets = new int[] { 0, 5, 10, 20, 50 };
+        String[] s_fillTargets = new String[] { "Off", "5", "10", "20", "50" };
+        JComboBox fillTargetCombo = new JComboBox(s_fillTargets);
+        int ft = Prefs.getLastFillTarget();
+        index = 0;
+        for(int i = fillTargets.length - 1; i > 0; i--)
+            {
+            if (fillTargets[i] <= ft)
+                { index = i; break; }
+            }
+        fillTargetCombo.setSelectedIndex(index);
+
         // Voices Per Thread
         int[] voicesPerThread = new int[] { 1, 2, 4, 8, 16 };
         String[] s_voicesPerThread = new String[] { "1", "2", "4", "8", "16" };
-        JComboBox voicesPerThreadCombo = new JComboBox(s_voicesPerThread);
+        final JComboBox voicesPerThreadCombo = new JComboBox(s_voicesPerThread);
         int voicePerThread = Prefs.getLastNumVoicesPerThread();
         voicesPerThreadCombo.setSelectedIndex(voicePerThread == 1 ? 0 : (voicePerThread == 2 ? 1 : (voicePerThread == 4 ? 2 : (voicePerThread == 8 ? 3 : 4))));
 
         // Outputs Per Thread
         int[] outputsPerThread = new int[] { 1, 2, 4, 8, 16 };
         String[] s_outputsPerThread = new String[] { "1", "2", "4", "8", "16" };
-        JComboBox outputsPerThreadCombo = new JComboBox(s_outputsPerThread);
+        final JComboBox outputsPerThreadCombo = new JComboBox(s_outputsPerThread);
         int outputPerThread = Prefs.getLastNumOutputsPerThread();
         outputsPerThreadCombo.setSelectedIndex(outputPerThread == 1 ? 0 : (outputPerThread == 2 ? 1 : (outputPerThread == 4 ? 2 : (outputPerThread == 8 ? 3 : 4))));
 
@@ -887,6 +913,34 @@ public class Rack extends JPanel
         	}
         skipsCombo.setSelectedIndex(index);
         
+        // Renderer
+        JComboBox rendererCombo = new JComboBox(Output.RENDERER_NAMES);
+        rendererCombo.setSelectedIndex(Prefs.getLastRenderer());
+
+        // Scheduler
+        final JComboBox schedulerCombo = new JComboBox(Output.SCHEDULER_NAMES);
+        schedulerCombo.addItemListener(new ItemListener()
+            {
+            public void itemStateChanged(ItemEvent e)
+                {
+                boolean perThread = (schedulerCombo.getSelectedIndex() == Output.SCHEDULER_STATIC);
+                voicesPerThreadCombo.setEnabled(perThread);
+                outputsPerThreadCombo.setEnabled(perThread);
+                }
+            });
+        int sched = Prefs.getLastScheduler();
+        voicesPerThreadCombo.setEnabled(sched == Output.SCHEDULER_STATIC);
+        outputsPerThreadCombo.setEnabled(sched == Output.SCHEDULER_STATIC);
+        schedulerCombo.setSelectedIndex(sched);
+
+        // Control Clock
+        JComboBox controlClockCombo = new JComboBox(Output.CONTROL_CLOCK_NAMES);
+        controlClockCombo.setSelectedIndex(Prefs.getLastControlClock());
+
+        // Interpolation
+        JComboBox interpolationCombo = new JComboBox(Output.INTERPOLATION_NAMES);
+        interpolationCombo.setSelectedIndex(Prefs.getLastInterpolation());
+        
         JCheckBox stereoCheckbox = new JCheckBox();
         stereoCheckbox.setSelected(Prefs.getLastStereo());
         JPanel b = new JPanel();
@@ -894,9 +948,30 @@ public class Rack extends JPanel
         b.add(stereoCheckbox, BorderLayout.WEST);
         b.add(Stretch.makeHorizontalStretch(), BorderLayout.CENTER);
 
+        JCheckBox maskingCheckbox = new JCheckBox();
+        maskingCheckbox.setSelected(Prefs.getLastMasking());
+        JPanel d = new JPanel();
+        d.setLayout(new BorderLayout());
+        d.add(maskingCheckbox, BorderLayout.WEST);
+        d.add(Stretch.makeHorizontalStretch(), BorderLayout.CENTER);
+
+        JCheckBox adaptiveCheckbox = new JCheckBox();
+        adaptiveCheckbox.setSelected(Prefs.getLastAdaptiveControlRate());
+        JPanel e = new JPanel();
+        e.setLayout(new BorderLayout());
+        e.add(adaptiveCheckbox, BorderLayout.WEST);
+        e.add(Stretch.makeHorizontalStretch(), BorderLayout.CENTER);
+
+        JCheckBox loadSheddingCheckbox = new JCheckBox();
+        loadSheddingCheckbox.setSelected(Prefs.getLastLoadShedding());
+        JPanel c = new JPanel();
+        c.setLayout(new BorderLayout());
+        c.add(loadSheddingCheckbox, BorderLayout.WEST);
+        c.add(Stretch.makeHorizontalStretch(), BorderLayout.CENTER);
+
         int result = showMultiOption(this, 
-            new String[] { "Polyphony", "Buffer Size Per Channel", "Partials", "Voices Per Thread", "Outputs Per Thread", "Samples Per Partials Update", "Stereo" }, 
-            new JComponent[] { voicesCombo, bufferSizeCombo, partialsCombo, voicesPerThreadCombo, outputsPerThreadCombo, skipsCombo, b }, 
+            new String[] { "Polyphony", "Buffer Size Per Channel", "Render Ahead (ms)", "Partials", "Total Partials Budget", "Scheduler", "Voices Per Thread", "Outputs Per Thread", "Samples Per Partials Update", "Control Clock", "Adaptive Control Rate", "Renderer", "Amplitude Interpolation", "Cull Masked Partials", "Shed Load When Overloaded", "Stereo" }, 
+            new JComponent[] { voicesCombo, bufferSizeCombo, fillTargetCombo, partialsCombo, budgetCombo, schedulerCombo, voicesPerThreadCombo, outputsPerThreadCombo, skipsCombo, controlClockCombo, e, rendererCombo, interpolationCombo, d, c, b }, 
             "Tuning Parameters", 
             "<html>Parameter changes don't take effect<br>until the synthesizer is restarted.",
             new String[] { "Okay", "Reset", "Cancel", });
@@ -905,21 +980,39 @@ public class Rack extends JPanel
             {
             Prefs.setLastNumVoices(voices[voicesCombo.getSelectedIndex()]);
             Prefs.setLastBufferSize(bufferSize[bufferSizeCombo.getSelectedIndex()]);
+            Prefs.setLastFillTarget(fillTargets[fillTargetCombo.getSelectedIndex()]);
             Prefs.setLastNumPartials(partials[partialsCombo.getSelectedIndex()]);
+            Prefs.setLastPartialBudget(budgets[budgetCombo.getSelectedIndex()]);
+            Prefs.setLastScheduler(schedulerCombo.getSelectedIndex());
             Prefs.setLastNumVoicesPerThread(voicesPerThread[voicesPerThreadCombo.getSelectedIndex()]);
             Prefs.setLastNumOutputsPerThread(outputsPerThread[outputsPerThreadCombo.getSelectedIndex()]);
             Prefs.setLastStereo(stereoCheckbox.isSelected());
+            Prefs.setLastLoadShedding(loadSheddingCheckbox.isSelected());
+            Prefs.setLastMasking(maskingCheckbox.isSelected());
             Prefs.setLastSkip(skips[skipsCombo.getSelectedIndex()]);
+            Prefs.setLastControlClock(controlClockCombo.getSelectedIndex());
+            Prefs.setLastAdaptiveControlRate(adaptiveCheckbox.isSelected());
+            Prefs.setLastRenderer(rendererCombo.getSelectedIndex());
+            Prefs.setLastInterpolation(interpolationCombo.getSelectedIndex());
             }
         else if (result == 1) // RESET
             {
             Prefs.setLastNumVoices(Output.DEFAULT_NUM_VOICES);
             Prefs.setLastBufferSize(Output.DEFAULT_BUFFER_SIZE);
+            Prefs.setLastFillTarget(Output.DEFAULT_FILL_TARGET);
             Prefs.setLastNumPartials(Unit.DEFAULT_NUM_PARTIALS);
+            Prefs.setLastPartialBudget(Output.DEFAULT_PARTIAL_BUDGET);
+            Prefs.setLastScheduler(Output.DEFAULT_SCHEDULER);
             Prefs.setLastNumVoicesPerThread(Output.DEFAULT_NUM_VOICES_PER_THREAD);
             Prefs.setLastNumOutputsPerThread(Output.DEFAULT_NUM_OUTPUTS_PER_THREAD);
             Prefs.setLastStereo(Output.DEFAULT_STEREO);
+            Prefs.setLastLoadShedding(Output.DEFAULT_LOAD_SHEDDING);
+            Prefs.setLastMasking(Output.DEFAULT_MASKING);
             Prefs.setLastSkip(Output.DEFAULT_SKIP);
+            Prefs.setLastControlClock(Output.DEFAULT_CONTROL_CLOCK);
+            Prefs.setLastAdaptiveControlRate(Output.DEFAULT_ADAPTIVE_CONTROL_RATE);
+            Prefs.setLastRenderer(Output.DEFAULT_RENDERER);
+            Prefs.setLastInterpolation(Output.DEFAULT_INTERPOLATION);
             }
         else if (result == 2 || result == -1)           // CANCEL
             {
@@ -40,6 +40,8 @@ public class AmpMath extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int UNIT_INPUT_A = 0;
     public static final int UNIT_INPUT_B = 1;
 
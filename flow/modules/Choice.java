@@ -12,6 +12,8 @@ import javax.swing.*;
 public class Choice extends Unit implements Miscellaneous
     {       
     private static final long serialVersionUID = 1;
+
+    public boolean hasSideEffects() { return true; }
         
     public static final int UNIT_TARGET = 0;
     public static final int MOD_TARGET = 0;
@@ -142,6 +144,7 @@ public class Choice extends Unit implements Miscellaneous
             lastOptionName = getOptionName(mod, newOption);
             lastValueName = getValueName(mod, newOption, newValue);
             mod.setOptionValue(newOption, newValue);
+            sound.markStale();          // so the target runs again even if it's incremental
             }
         else  // just the value changed.  So we just redo it.
             {
@@ -169,6 +172,7 @@ public class Choice extends Unit implements Miscellaneous
             lastOptionName = getOptionName(mod, newOption);
             lastValueName = getValueName(mod, newOption, newValue);
             mod.setOptionValue(newOption, newValue);
+            sound.markStale();          // so the target runs again even if it's incremental
             }
         
         lastMod = mod;
@@ -5,6 +5,7 @@
 package flow.modules;
 
 import flow.*;
+import java.util.*;
 
 /** 
     A Unit which combines the lower partials of two sources, A, and B.  The way the
@@ -26,6 +27,8 @@ public class Combine extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int UNIT_INPUT_A = 0;
     public static final int UNIT_INPUT_B = 1;
 
@@ -34,6 +37,7 @@ public class Combine extends Unit
 
     int[] outstandingOrders;
     int[] outstandingOrderPositions;
+    boolean[] filledOrders;
         
     /// Do we attempt to merge identical frequencies into one frequency, or load them independently?
     boolean merge = false;
@@ -95,7 +99,9 @@ public class Combine extends Unit
         // 3. We arbitrarily assign the remainder
         // To do this we need some arrays, and we'll have to allocate them every time or otherwise
         // zero them out.  This allows us to avoid doing sorts, yay.
-        boolean[] filledOrders = new boolean[amplitudes.length];  // all false
+        if (filledOrders == null) filledOrders = new boolean[amplitudes.length];
+        boolean[] filledOrders = this.filledOrders;
+        Arrays.fill(filledOrders, false);
 
         if (outstandingOrders == null) outstandingOrders = new int[amplitudes.length];
         if (outstandingOrderPositions == null) outstandingOrderPositions = new int[amplitudes.length];
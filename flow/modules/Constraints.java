@@ -24,6 +24,10 @@ import flow.gui.UnitOutput;
 public class Constraints extends Unit implements UnitSource {
   private static final long serialVersionUID = 1;
 
+  public boolean dependsOnlyOnInputs() {
+    return true;
+  }
+
   public Constraints(Sound sound) {
     super(sound);
     defineOptions(
@@ -20,6 +20,8 @@ public class Delay extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean countsBlocks() { return true; }
+
     public static final int MOD_WET = 0;
     public static final int MOD_INITIAL_DELAY = 1;
     public static final int MOD_LATER_DELAYS = 2;
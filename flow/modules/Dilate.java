@@ -17,6 +17,8 @@ public class Dilate extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_CUT = 0;
 
     public static final int DIRECTION_LEFT = 0;
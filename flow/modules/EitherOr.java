@@ -11,6 +11,8 @@ public class EitherOr extends Modulation
     {       
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static String getName() { return "Either/Or"; }
 
     public static final int MAX_OPTIONS = 4;
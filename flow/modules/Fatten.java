@@ -287,9 +287,7 @@ iM[m] = true;
         {
         super.go();
                 
-        copyFrequencies(0);
-        copyAmplitudes(0);
-        copyOrders(0);
+        copyPartials(0);
 
         double[] amplitudes = getAmplitudes(0);
         double[] frequencies = getFrequencies(0);
@@ -17,6 +17,8 @@ public class Filter extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int MOD_CUTOFF = 0;
     public static final int MOD_STATE = 1;
     public static final int MOD_RESONANCE = 2;
@@ -20,6 +20,8 @@ public class Fix extends Modulation implements Miscellaneous
     {
     private static final long serialVersionUID = 1;
 
+    public boolean hasSideEffects() { return true; }
+
     public static final int MOD_NOTE = 0;
     public static final int MOD_VELOCTY = 1;
 
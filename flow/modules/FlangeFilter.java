@@ -26,6 +26,8 @@ public class FlangeFilter extends Unit
     {       
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int MOD_WET = 0;
     public static final int MOD_OFFSET_MOD = 1;
     public static final int MOD_STRETCH = 2;
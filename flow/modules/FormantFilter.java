@@ -13,6 +13,8 @@ public class FormantFilter extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int MOD_INTERPOLATION = 0;
     public static final int MOD_NUM_VOWELS = 1;
     public static final int MOD_GAIN = 2;
@@ -17,6 +17,8 @@ import flow.gui.*;
 public class Harmonics extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
+
+    public boolean dependsOnlyOnInputs() { return true; }
         
     public static final int NUM_HARMONICS = 32;
 
@@ -106,6 +108,7 @@ public class Harmonics extends Unit implements UnitSource
 
                                         if (d.getModulation(i) instanceof Constant)
                                             ((Constant)(d.getModulation(i))).setValue(a);
+                                        s.refold();
                                         }
                                     }
                                 }
@@ -17,6 +17,8 @@ public class KHarmonics extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MAX_HARMONICS = 128;  // regardless of number of partials
     public static final double MAX_AMPLITUDE = 100.0;  // highest legal amplitude
 
@@ -183,6 +183,12 @@ public class LFO extends Modulation implements ModSource
         resetLFO();
         }
 
+    // A free-running, non-random LFO which nothing retriggers runs off the clock alone, so it's the same in every voice
+    public boolean isVoiceInvariant()
+        {
+        return free && type != RANDOM && type != RANDOM_SAMPLE_AND_HOLD && isModulationConstant(MOD_GATE_TR);
+        }
+
                 
     public LFO(Sound sound)
         {
@@ -22,6 +22,8 @@ public class LinearFilter extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int MOD_NODES = 0;
     public static final int MOD_BASE = 1;
 
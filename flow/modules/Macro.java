@@ -32,6 +32,14 @@ public class Macro extends Unit implements Cloneable
     {
     private static final long serialVersionUID = 1;
 
+    public boolean hasSideEffects()
+        {
+        if (modules == null) return false;
+        for(int i = 0; i < modules.length; i++)
+            if (modules[i].hasSideEffects()) return true;
+        return false;
+        }
+
     public static final String PATCH_NAME_KEY = "Patch Name";
 
     public static final int MOD_ON_TR = In.NUM_MOD_INPUTS;
@@ -218,13 +226,8 @@ public class Macro extends Unit implements Cloneable
             len = out.getNumInputs();
             for(int i = 0; i < len; i++)
                 {
+                getPartials(i).copy(out.getPartialsIn(i));
                 double[] amplitudes = getAmplitudes(i);
-                double[] frequencies = getFrequencies(i);
-                byte[] orders = getOrders(i);
-                        
-                System.arraycopy(out.getFrequenciesIn(i), 0, frequencies, 0, frequencies.length);
-                System.arraycopy(out.getOrdersIn(i), 0, orders, 0, orders.length);
-                System.arraycopy(out.getAmplitudesIn(i), 0, amplitudes, 0, amplitudes.length);
                 // we handle the gain here, since we are extracting data directly from out. 
                 double gain = out.getGain();
                 if (gain != 1.0)
@@ -24,6 +24,8 @@ public class Map extends Modulation
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_SIGNAL = 0;
     public static final int MOD_BOUND_A = 1;
     public static final int MOD_BOUND_B = 2;
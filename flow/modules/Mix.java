@@ -16,6 +16,8 @@ public class Mix extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_GAIN_A = 0;
     public static final int MOD_GAIN_B = 1;
     public static final int MOD_GAIN_C = 2;
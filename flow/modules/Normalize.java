@@ -18,6 +18,8 @@ public class Normalize extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public Normalize(Sound sound)
         {
         super(sound);
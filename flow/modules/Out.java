@@ -33,6 +33,8 @@ public class Out extends Unit implements Miscellaneous
     {
     private static final long serialVersionUID = 1;
 
+    public boolean hasSideEffects() { return true; }
+
     public static final int NUM_MOD_OUTPUTS = 4;
     public static final int NUM_UNIT_OUTPUTS = 4;
     public static final String[] UNIT_NAMES = new String[]  { "A", "B", "C", "D" };
@@ -71,6 +73,10 @@ public class Out extends Unit implements Miscellaneous
             }
         }
     
+    boolean spectral;
+    public boolean getSpectral() { return spectral; }
+    public void setSpectral(boolean val) { spectral = val; }
+    
     double[][] modWave = new double[2][WAVE_SIZE];
     int[] wavePos = new int[] { 0, 0 };
     boolean waveTriggered[] = new boolean[] { false, false };
@@ -100,19 +106,21 @@ public class Out extends Unit implements Miscellaneous
         defineInputs( new Unit[] { Unit.NIL, Unit.NIL, Unit.NIL, Unit.NIL }, (String[]) UNIT_NAMES.clone());
         defineOutputs( new String[] { "A", "B" } );
         defineModulations(new Constant[] { Constant.ZERO, Constant.ZERO, Constant.ZERO, Constant.ZERO, Constant.QUARTER, Constant.ZERO, Constant.HALF, Constant.HALF, Constant.HALF }, (String[]) MOD_NAMES.clone());
-        defineOptions(new String[] { "Dephase" }, new String[][] { { "Dephase" } } );
+        defineOptions(new String[] { "Dephase", "Spectral" }, new String[][] { { "Dephase" }, { "Spectral" } } );
         if (sound != null) sound.setEmits(this);
         }
 
 
 
     public static final int OPTION_DEPHASE = 0;
+    public static final int OPTION_SPECTRAL = 1;
         
     public int getOptionValue(int option) 
         { 
         switch(option)
             {
             case OPTION_DEPHASE: return getDephase() ? 1 : 0;
+            case OPTION_SPECTRAL: return getSpectral() ? 1 : 0;
             default: throw new RuntimeException("No such option " + option);
             }
         }
@@ -122,6 +130,7 @@ public class Out extends Unit implements Miscellaneous
         switch(option)
             {
             case OPTION_DEPHASE: setDephase(value != 0); return;
+            case OPTION_SPECTRAL: setSpectral(value != 0); return;
             default: throw new RuntimeException("No such option " + option);
             }
         }       
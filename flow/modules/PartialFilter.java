@@ -36,6 +36,8 @@ public class PartialFilter extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int UNIT_INPUT = 0;
     public static final int UNIT_PARTIALS = 1;
         
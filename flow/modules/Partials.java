@@ -18,6 +18,8 @@ import flow.gui.*;
 public class Partials extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
+
+    public boolean dependsOnlyOnInputs() { return true; }
         
     public static final int NUM_PARTIALS = 16;
     
@@ -150,6 +152,7 @@ public class Partials extends Unit implements UnitSource
                                             ((Constant)(d.getModulation(i))).setValue(m);
                                         if (d.getModulation(i + NUM_PARTIALS) instanceof Constant)
                                             ((Constant)(d.getModulation(i + NUM_PARTIALS))).setValue(a);
+                                        s.refold();
                                         }
                                     }
                                 }
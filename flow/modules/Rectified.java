@@ -15,6 +15,8 @@ public class Rectified extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     // A rectified Sine Wave, that is, Abs(Sin(x))
     public Rectified(Sound sound) 
         {
@@ -29,6 +29,8 @@ public class Rotate extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_ROTATE = 0;
     public static final int MOD_UPPER_BOUND = 1;
     public static final int MOD_LOWER_BOUND = 2;
@@ -14,6 +14,8 @@ public class Sawtooth extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public Sawtooth(Sound sound) 
         {
         super(sound);
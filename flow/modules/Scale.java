@@ -15,6 +15,8 @@ public class Scale extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_SCALE = 0;
 
     public Scale(Sound sound) 
@@ -34,6 +34,8 @@ public class Shift extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean isIncremental() { return true; }
+
     public static final int MOD_SHIFT = 0;
     public static final int MOD_BOUND = 1;
 
@@ -15,6 +15,8 @@ public class Sine extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_FREQUENCY = 0;
 
     public Sine(Sound sound) 
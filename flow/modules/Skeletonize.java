@@ -21,6 +21,8 @@ public class Skeletonize extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_CUT = 0;
 
     public static final int DIRECTION_LEFT = 0;
@@ -28,6 +30,8 @@ public class Skeletonize extends Unit
     public static final int DIRECTION_BOTH = 2;
      
     int direction = DIRECTION_BOTH;
+    double[] upcuts_a;
+    double[] downcuts_a;
     public int getDirection() { return direction; }
     public void setDirection(int val) { direction = val; }
      
@@ -71,8 +75,15 @@ public class Skeletonize extends Unit
         
         double cut = 1.0 - modulate(MOD_CUT);
 
-        double[] upcuts = new double[amplitudes.length];
-        double[] downcuts = new double[amplitudes.length];  
+        if (upcuts_a == null)
+            {
+            upcuts_a = new double[amplitudes.length];
+            downcuts_a = new double[amplitudes.length];
+            }
+
+        // every slot we read is written first, so there's no need to zero these
+        double[] upcuts = upcuts_a;
+        double[] downcuts = downcuts_a;
         double c = 1.0;
         
         if (direction == DIRECTION_BOTH)
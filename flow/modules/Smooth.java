@@ -22,6 +22,8 @@ public class Smooth extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean countsBlocks() { return true; }
+
     public static final int MOD_AMOUNT = 0;
 
     boolean free;
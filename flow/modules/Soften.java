@@ -15,6 +15,8 @@ public class Soften extends Modulation
     {
     private static final long serialVersionUID = 1;
 
+    public boolean countsBlocks() { return true; }
+
     public static final int MOD_SIGNAL = 0;
     public static final int MOD_AMOUNT = 1;
     public static final int MOD_SCALE = 2;
@@ -16,6 +16,8 @@ public class Square extends Unit implements UnitSource //, Parameterizable
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_PULSE_WIDTH = 0;
 
     double lastMod = -1;
@@ -26,6 +26,8 @@ public class Stretch extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_AMOUNT = 0;
     public static final int MOD_MAX_AMOUNT = 1;
     public static final int MOD_PARTIAL = 2;
@@ -26,10 +26,14 @@ public class Sub extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final double BOUND = 4;
     public static final int NUM_SUBS = 4;
     public static final double[] SUB_FREQUENCIES = new double[] { 0.5, 0.25, 0.125, .0625 };
 
+    byte[] topOrders = new byte[NUM_SUBS];
+
     public Sub(Sound sound) 
         {
         super(sound);
@@ -45,14 +49,12 @@ public class Sub extends Unit
         {
         super.go();
                 
-        copyFrequencies(0);
-        copyAmplitudes(0);
-        copyOrders(0);
+        copyPartials(0);
 
         double[] frequencies = getFrequencies(0);
         double[] amplitudes = getAmplitudes(0);
         byte[] orders = getOrders(0);
-        byte[] topOrders = new byte[NUM_SUBS];
+        byte[] topOrders = this.topOrders;
         
         // make room at the bottom so we don't have to sort
         for(int j = 0; j < NUM_SUBS; j++)
@@ -19,6 +19,8 @@ public class Swap extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_DISTANCE = 0;
 
     boolean swapFundamental;
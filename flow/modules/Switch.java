@@ -38,6 +38,8 @@ public class Switch extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean countsBlocks() { return true; }
+
 	public static final int NUM_INPUTS = 4;
 	public static final int MOD_ALPHA = NUM_INPUTS;
 	
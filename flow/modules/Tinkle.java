@@ -29,6 +29,8 @@ public class Tinkle extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean countsBlocks() { return true; }
+
     public static final int MOD_TRIGGER = 0;
     public static final int MOD_DECAY = 1;
     public static final int MOD_VOLUME = 2;
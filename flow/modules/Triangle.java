@@ -17,6 +17,8 @@ public class Triangle extends Unit implements UnitSource
     {       
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public Triangle(Sound sound) 
         {
         super(sound);
@@ -18,6 +18,8 @@ public class VCA extends Unit
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MOD_MOD = 0;
     public static final int MOD_SCALE = 1;
 
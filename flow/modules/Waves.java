@@ -16,6 +16,8 @@ public class Waves extends Unit implements UnitSource
     {
     private static final long serialVersionUID = 1;
 
+    public boolean dependsOnlyOnInputs() { return true; }
+
     public static final int MAX_HARMONICS = 256;  // regardless of number of partials
     public static final double MAX_AMPLITUDE = 999.0;  // highest legal amplitude
 